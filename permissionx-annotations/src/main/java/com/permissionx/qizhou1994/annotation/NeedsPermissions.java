@@ -0,0 +1,75 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a FragmentActivity or Fragment that needs permissions to run.
+ * <p>
+ * permissionx-compiler generates a class named after the host class with a PermissionX suffix, holding a
+ * methodNameWithPermissionCheck method for every annotated method. It requests the permissions and calls the
+ * annotated method when all of them are granted. The permissions are split into normal and special ones at build time.
+ * <pre>
+ * &#64;NeedsPermissions(value = Manifest.permission.CAMERA, explainReason = "explainCamera")
+ * void takePicture() { ... }
+ *
+ * void explainCamera(ExplainScope scope, List&lt;String&gt; deniedList) { ... }
+ *
+ * MainActivityPermissionX.takePictureWithPermissionCheck(this);
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface NeedsPermissions {
+
+    /**
+     * Permissions that the method needs.
+     */
+    String[] value();
+
+    /**
+     * Name of the method in the same class that explains the request reason, as ExplainReasonCallback does.
+     * It takes an ExplainScope and a List of String. Empty if there's none.
+     */
+    String explainReason() default "";
+
+    /**
+     * Explain the request reason before the request, as PermissionBuilder.explainReasonBeforeRequest does.
+     * Only works with {@link #explainReason()}.
+     */
+    boolean explainReasonBeforeRequest() default false;
+
+    /**
+     * Name of the method in the same class that forwards to Settings, as ForwardToSettingsCallback does.
+     * It takes a ForwardScope and a List of String. Empty if there's none.
+     */
+    String forwardToSettings() default "";
+
+    /**
+     * Name of the method in the same class that is called when not all permissions are granted.
+     * It takes a List of String holding the denied permissions. Empty if there's none.
+     */
+    String onDenied() default "";
+
+}
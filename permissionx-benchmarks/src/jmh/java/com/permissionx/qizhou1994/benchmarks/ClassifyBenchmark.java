@@ -0,0 +1,57 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import com.permissionx.qizhou1994.core.PermissionClassifier;
+import com.permissionx.qizhou1994.core.Platform;
+import com.permissionx.qizhou1994.core.RequestState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Cost of splitting the requested permissions into normal and special ones, as PermissionMediator.permissions does.
+ */
+@State(Scope.Thread)
+public class ClassifyBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int permissionCount;
+
+    @Param({"29", "30"})
+    public int osVersion;
+
+    private List<String> permissions;
+
+    private Platform platform;
+
+    @Setup
+    public void setup() {
+        permissions = Permissions.first(permissionCount);
+        platform = new Platform(osVersion, Platform.R);
+    }
+
+    @Benchmark
+    public RequestState classify() {
+        return PermissionClassifier.classify(permissions, platform);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import com.permissionx.qizhou1994.core.Permissions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cost of the first lookup in the permission tables, as the first request of a process pays it.
+ * Every operation loads the tables class into a new class loader, so its class initialization runs every time.
+ * eagerTables is built like the old top-level maps of PermissionMap.kt, switchTables is core Permissions.
+ */
+@State(Scope.Thread)
+public class ColdStartBenchmark {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    private byte[] eagerTablesClass;
+
+    private byte[] switchTablesClass;
+
+    @Setup
+    public void setup() throws IOException {
+        eagerTablesClass = readClass(EagerTables.class);
+        switchTablesClass = readClass(Permissions.class);
+    }
+
+    @Benchmark
+    public Object eagerTables() throws Exception {
+        return firstLookup(EagerTables.class.getName(), eagerTablesClass);
+    }
+
+    @Benchmark
+    public Object switchTables() throws Exception {
+        return firstLookup(Permissions.class.getName(), switchTablesClass);
+    }
+
+    private static Object firstLookup(String className, byte[] classBytes) throws Exception {
+        Class<?> tables = Class.forName(className, true, new FreshClassLoader(className, classBytes));
+        Method isSpecial = tables.getMethod("isSpecial", String.class);
+        Method groupOnQ = tables.getMethod("groupOnQ", String.class);
+        return isSpecial.invoke(null, CAMERA) == Boolean.FALSE ? groupOnQ.invoke(null, CAMERA) : null;
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        String resource = "/" + clazz.getName().replace('.', '/') + ".class";
+        try (InputStream input = clazz.getResourceAsStream(resource)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Defines one class itself, so the class is loaded and initialized again in every loader.
+     */
+    private static final class FreshClassLoader extends ClassLoader {
+
+        private final String className;
+
+        private final byte[] classBytes;
+
+        FreshClassLoader(String className, byte[] classBytes) {
+            super(ColdStartBenchmark.class.getClassLoader());
+            this.className = className;
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    clazz = defineClass(name, classBytes, 0, classBytes.length);
+                }
+                return clazz;
+            }
+        }
+
+    }
+
+    /**
+     * Same tables as the old top-level vals of PermissionMap.kt, built when the class is initialized.
+     */
+    public static final class EagerTables {
+
+        private static final Set<String> SPECIAL_PERMISSIONS = new LinkedHashSet<>(Arrays.asList(
+                "android.permission.ACCESS_BACKGROUND_LOCATION",
+                "android.permission.SYSTEM_ALERT_WINDOW",
+                "android.permission.WRITE_SETTINGS",
+                "android.permission.MANAGE_EXTERNAL_STORAGE"));
+
+        private static final Map<String, String> GROUPS_ON_Q = new LinkedHashMap<>();
+
+        static {
+            GROUPS_ON_Q.put("android.permission.READ_CALENDAR", "android.permission-group.CALENDAR");
+            GROUPS_ON_Q.put("android.permission.WRITE_CALENDAR", "android.permission-group.CALENDAR");
+            GROUPS_ON_Q.put("android.permission.READ_CALL_LOG", "android.permission-group.CALL_LOG");
+            GROUPS_ON_Q.put("android.permission.WRITE_CALL_LOG", "android.permission-group.CALL_LOG");
+            GROUPS_ON_Q.put("android.permission.PROCESS_OUTGOING_CALLS", "android.permission-group.CALL_LOG");
+            GROUPS_ON_Q.put("android.permission.CAMERA", "android.permission-group.CAMERA");
+            GROUPS_ON_Q.put("android.permission.READ_CONTACTS", "android.permission-group.CONTACTS");
+            GROUPS_ON_Q.put("android.permission.WRITE_CONTACTS", "android.permission-group.CONTACTS");
+            GROUPS_ON_Q.put("android.permission.GET_ACCOUNTS", "android.permission-group.CONTACTS");
+            GROUPS_ON_Q.put("android.permission.ACCESS_FINE_LOCATION", "android.permission-group.LOCATION");
+            GROUPS_ON_Q.put("android.permission.ACCESS_COARSE_LOCATION", "android.permission-group.LOCATION");
+            GROUPS_ON_Q.put("android.permission.ACCESS_BACKGROUND_LOCATION", "android.permission-group.LOCATION");
+            GROUPS_ON_Q.put("android.permission.RECORD_AUDIO", "android.permission-group.MICROPHONE");
+            GROUPS_ON_Q.put("android.permission.READ_PHONE_STATE", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("android.permission.READ_PHONE_NUMBERS", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("android.permission.CALL_PHONE", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("android.permission.ANSWER_PHONE_CALLS", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("com.android.voicemail.permission.ADD_VOICEMAIL", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("android.permission.USE_SIP", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("android.permission.ACCEPT_HANDOVER", "android.permission-group.PHONE");
+            GROUPS_ON_Q.put("android.permission.BODY_SENSORS", "android.permission-group.SENSORS");
+            GROUPS_ON_Q.put("android.permission.ACTIVITY_RECOGNITION", "android.permission-group.ACTIVITY_RECOGNITION");
+            GROUPS_ON_Q.put("android.permission.SEND_SMS", "android.permission-group.SMS");
+            GROUPS_ON_Q.put("android.permission.RECEIVE_SMS", "android.permission-group.SMS");
+            GROUPS_ON_Q.put("android.permission.READ_SMS", "android.permission-group.SMS");
+            GROUPS_ON_Q.put("android.permission.RECEIVE_WAP_PUSH", "android.permission-group.SMS");
+            GROUPS_ON_Q.put("android.permission.RECEIVE_MMS", "android.permission-group.SMS");
+            GROUPS_ON_Q.put("android.permission.READ_EXTERNAL_STORAGE", "android.permission-group.STORAGE");
+            GROUPS_ON_Q.put("android.permission.WRITE_EXTERNAL_STORAGE", "android.permission-group.STORAGE");
+            GROUPS_ON_Q.put("android.permission.ACCESS_MEDIA_LOCATION", "android.permission-group.STORAGE");
+        }
+
+        private EagerTables() {
+        }
+
+        public static boolean isSpecial(String permission) {
+            return SPECIAL_PERMISSIONS.contains(permission);
+        }
+
+        public static String groupOnQ(String permission) {
+            return GROUPS_ON_Q.get(permission);
+        }
+
+    }
+
+}
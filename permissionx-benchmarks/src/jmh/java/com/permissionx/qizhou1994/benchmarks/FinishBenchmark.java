@@ -0,0 +1,74 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import com.permissionx.qizhou1994.core.PermissionClassifier;
+import com.permissionx.qizhou1994.core.Platform;
+import com.permissionx.qizhou1994.core.RequestResult;
+import com.permissionx.qizhou1994.core.RequestState;
+import com.permissionx.qizhou1994.core.RequestStateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Cost of assembling the result in BaseTask.finish, including the special-permission checks.
+ */
+@State(Scope.Thread)
+public class FinishBenchmark {
+
+    @Param({"4", "16"})
+    public int permissionCount;
+
+    private FakePermissionChecker checker;
+
+    private final Platform platform = new Platform(Platform.R, Platform.R);
+
+    private RequestState state;
+
+    @Setup
+    public void setupChecker() {
+        checker = new FakePermissionChecker()
+                .grant(Permissions.SYSTEM_ALERT_WINDOW)
+                .grant(Permissions.ACCESS_BACKGROUND_LOCATION);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupState() {
+        List<String> permissions = Permissions.first(permissionCount);
+        state = PermissionClassifier.classify(permissions, platform);
+        int i = 0;
+        for (String permission : state.normalPermissions) {
+            if (i++ % 3 == 0) {
+                state.deniedPermissions.add(permission);
+            } else {
+                state.grantedPermissions.add(permission);
+            }
+        }
+    }
+
+    @Benchmark
+    public RequestResult finish() {
+        return RequestStateMachine.assembleResult(state, platform, checker);
+    }
+
+}
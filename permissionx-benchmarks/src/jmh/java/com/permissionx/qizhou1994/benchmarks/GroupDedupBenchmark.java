@@ -0,0 +1,57 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import com.permissionx.qizhou1994.core.PermissionGroups;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cost of collapsing permissions into permission groups, as DefaultDialog.buildPermissionsLayout does before inflating items.
+ */
+@State(Scope.Thread)
+public class GroupDedupBenchmark {
+
+    @Param({"4", "16"})
+    public int permissionCount;
+
+    private List<String> permissions;
+
+    private final PermissionGroups.GroupResolver resolver = new PermissionGroups.GroupResolver() {
+        @Override
+        public String groupOf(String permission) {
+            return com.permissionx.qizhou1994.core.Permissions.groupOnQ(permission);
+        }
+    };
+
+    @Setup
+    public void setup() {
+        permissions = Permissions.first(permissionCount);
+    }
+
+    @Benchmark
+    public Map<String, String> dedupGroups() {
+        return PermissionGroups.pickGroupItems(permissions, resolver);
+    }
+
+}
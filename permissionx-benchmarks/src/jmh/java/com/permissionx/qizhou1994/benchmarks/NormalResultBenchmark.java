@@ -0,0 +1,74 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import com.permissionx.qizhou1994.core.Decision;
+import com.permissionx.qizhou1994.core.RequestState;
+import com.permissionx.qizhou1994.core.RequestStateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Cost of the permission-set transitions in InvisibleFragment.onRequestNormalPermissionsResult.
+ * Every second permission is denied, half of the denied ones should show rationale.
+ */
+@State(Scope.Thread)
+public class NormalResultBenchmark {
+
+    @Param({"1", "4", "12"})
+    public int permissionCount;
+
+    private List<String> requested;
+
+    private String[] permissions;
+
+    private boolean[] grantResults;
+
+    private FakePermissionChecker checker;
+
+    @Setup
+    public void setup() {
+        requested = Permissions.first(permissionCount);
+        permissions = requested.toArray(new String[0]);
+        grantResults = new boolean[permissions.length];
+        checker = new FakePermissionChecker();
+        for (int i = 0; i < permissions.length; i++) {
+            if (i % 2 == 0) {
+                grantResults[i] = true;
+                checker.grant(permissions[i]);
+            } else {
+                grantResults[i] = false;
+                if (i % 4 == 1) {
+                    checker.showRationale(permissions[i]);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Decision onNormalPermissionsResult() {
+        RequestState state = new RequestState(new LinkedHashSet<>(requested), new LinkedHashSet<String>());
+        return RequestStateMachine.onNormalPermissionsResult(state, permissions, grantResults, checker, true, true);
+    }
+
+}
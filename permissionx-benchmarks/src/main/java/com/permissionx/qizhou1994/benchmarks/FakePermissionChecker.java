@@ -0,0 +1,74 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import com.permissionx.qizhou1994.core.PermissionHost;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A {@link PermissionHost} standing in for ContextCompat.checkSelfPermission and shouldShowRequestPermissionRationale,
+ * so the request pipeline can run on a plain JVM. Also counts the calls, which are system calls on a device.
+ */
+public class FakePermissionChecker implements PermissionHost {
+
+    private final Set<String> grantedPermissions = new HashSet<>();
+
+    private final Set<String> rationalePermissions = new HashSet<>();
+
+    /**
+     * How many times {@link #isGranted(String)} is called.
+     */
+    public int grantChecks;
+
+    /**
+     * How many times {@link #shouldShowRationale(String)} is called.
+     */
+    public int rationaleChecks;
+
+    public FakePermissionChecker grant(String permission) {
+        grantedPermissions.add(permission);
+        return this;
+    }
+
+    public FakePermissionChecker showRationale(String permission) {
+        rationalePermissions.add(permission);
+        return this;
+    }
+
+    public boolean isGranted(String permission) {
+        grantChecks++;
+        return grantedPermissions.contains(permission);
+    }
+
+    @Override
+    public boolean[] areGranted(String[] permissions) {
+        boolean[] results = new boolean[permissions.length];
+        for (int i = 0; i < permissions.length; i++) {
+            results[i] = isGranted(permissions[i]);
+        }
+        return results;
+    }
+
+    @Override
+    public boolean shouldShowRationale(String permission) {
+        rationaleChecks++;
+        return rationalePermissions.contains(permission);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Permission names the benchmarks work on. Same values as android.Manifest, but without the Android dependency.
+ */
+public final class Permissions {
+
+    public static final String ACCESS_BACKGROUND_LOCATION = "android.permission.ACCESS_BACKGROUND_LOCATION";
+    public static final String SYSTEM_ALERT_WINDOW = "android.permission.SYSTEM_ALERT_WINDOW";
+    public static final String WRITE_SETTINGS = "android.permission.WRITE_SETTINGS";
+    public static final String MANAGE_EXTERNAL_STORAGE = "android.permission.MANAGE_EXTERNAL_STORAGE";
+
+    public static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    public static final String ACCESS_COARSE_LOCATION = "android.permission.ACCESS_COARSE_LOCATION";
+
+    /**
+     * A typical request of an app, normal permissions from several groups mixed with special ones.
+     */
+    public static final List<String> ALL = Collections.unmodifiableList(Arrays.asList(
+            "android.permission.CAMERA",
+            "android.permission.RECORD_AUDIO",
+            ACCESS_FINE_LOCATION,
+            ACCESS_COARSE_LOCATION,
+            "android.permission.READ_CONTACTS",
+            "android.permission.WRITE_CONTACTS",
+            "android.permission.READ_CALENDAR",
+            "android.permission.WRITE_CALENDAR",
+            "android.permission.READ_EXTERNAL_STORAGE",
+            "android.permission.WRITE_EXTERNAL_STORAGE",
+            "android.permission.READ_PHONE_STATE",
+            "android.permission.CALL_PHONE",
+            ACCESS_BACKGROUND_LOCATION,
+            SYSTEM_ALERT_WINDOW,
+            WRITE_SETTINGS,
+            MANAGE_EXTERNAL_STORAGE));
+
+    private Permissions() {
+    }
+
+    /**
+     * The first count permissions of {@link #ALL}.
+     */
+    public static List<String> first(int count) {
+        return ALL.subList(0, Math.min(count, ALL.size()));
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.compiler;
+
+import com.permissionx.qizhou1994.annotation.NeedsPermissions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a request wrapper for every method annotated with {@link NeedsPermissions}. See {@link WrapperWriter} for
+ * what the wrapper looks like. Every generated file comes from one host class, so the processor is isolating.
+ */
+public class NeedsPermissionsProcessor extends AbstractProcessor {
+
+    static final String FRAGMENT_ACTIVITY = "androidx.fragment.app.FragmentActivity";
+
+    static final String FRAGMENT = "androidx.fragment.app.Fragment";
+
+    private static final String EXPLAIN_SCOPE = "com.permissionx.qizhou1994.request.ExplainScope";
+
+    private static final String FORWARD_SCOPE = "com.permissionx.qizhou1994.request.ForwardScope";
+
+    private static final String LIST = "java.util.List";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(NeedsPermissions.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<ExecutableElement>> methodsByHost = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(NeedsPermissions.class)) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            TypeElement host = (TypeElement) element.getEnclosingElement();
+            List<ExecutableElement> methods = methodsByHost.get(host);
+            if (methods == null) {
+                methods = new ArrayList<>();
+                methodsByHost.put(host, methods);
+            }
+            methods.add((ExecutableElement) element);
+        }
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : methodsByHost.entrySet()) {
+            processHost(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    private void processHost(TypeElement host, List<ExecutableElement> methods) {
+        if (!isSubtypeOf(host, FRAGMENT_ACTIVITY) && !isSubtypeOf(host, FRAGMENT)) {
+            error(host, "@NeedsPermissions can only be used in a subclass of " + FRAGMENT_ACTIVITY + " or " + FRAGMENT);
+            return;
+        }
+        if (host.getModifiers().contains(Modifier.PRIVATE)) {
+            error(host, "@NeedsPermissions can't be used in a private class");
+            return;
+        }
+        boolean valid = true;
+        for (ExecutableElement method : methods) {
+            valid &= checkMethod(host, method);
+        }
+        if (!valid) {
+            return;
+        }
+        WrapperWriter writer = new WrapperWriter(processingEnv, host, methods);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(writer.getQualifiedName(), host);
+            try (Writer out = file.openWriter()) {
+                out.write(writer.write());
+            }
+        } catch (IOException e) {
+            error(host, "Can't write " + writer.getQualifiedName() + ": " + e.getMessage());
+        }
+    }
+
+    private boolean checkMethod(TypeElement host, ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            error(method, "A method annotated with @NeedsPermissions must not be private or static");
+            return false;
+        }
+        if (!method.getTypeParameters().isEmpty()) {
+            error(method, "A method annotated with @NeedsPermissions must not have type parameters");
+            return false;
+        }
+        NeedsPermissions annotation = method.getAnnotation(NeedsPermissions.class);
+        if (annotation.value().length == 0) {
+            error(method, "@NeedsPermissions needs at least one permission");
+            return false;
+        }
+        boolean valid = checkHandler(host, method, annotation.explainReason(), EXPLAIN_SCOPE, LIST);
+        valid &= checkHandler(host, method, annotation.forwardToSettings(), FORWARD_SCOPE, LIST);
+        valid &= checkHandler(host, method, annotation.onDenied(), LIST);
+        if (annotation.explainReasonBeforeRequest() && annotation.explainReason().isEmpty()) {
+            error(method, "explainReasonBeforeRequest only works with explainReason");
+            valid = false;
+        }
+        return valid;
+    }
+
+    /**
+     * Check that the handler named by the annotation exists in the host and takes the expected parameters.
+     */
+    private boolean checkHandler(TypeElement host, ExecutableElement method, String name, String... parameterTypes) {
+        if (name.isEmpty()) {
+            return true;
+        }
+        for (Element member : processingEnv.getElementUtils().getAllMembers(host)) {
+            if (member.getKind() != ElementKind.METHOD || !member.getSimpleName().contentEquals(name)) {
+                continue;
+            }
+            ExecutableElement handler = (ExecutableElement) member;
+            if (!handler.getModifiers().contains(Modifier.PRIVATE) && !handler.getModifiers().contains(Modifier.STATIC)
+                    && hasParameters(handler, parameterTypes)) {
+                return true;
+            }
+        }
+        error(method, "Can't find a non-private method " + name + "(" + String.join(", ", parameterTypes) + ") in " + host.getQualifiedName());
+        return false;
+    }
+
+    private boolean hasParameters(ExecutableElement handler, String[] parameterTypes) {
+        List<? extends VariableElement> parameters = handler.getParameters();
+        if (parameters.size() != parameterTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            TypeMirror erasure = processingEnv.getTypeUtils().erasure(parameters.get(i).asType());
+            if (!erasure.toString().equals(parameterTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSubtypeOf(TypeElement host, String className) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(className);
+        if (type == null || type.asType().getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        return processingEnv.getTypeUtils().isSubtype(host.asType(), processingEnv.getTypeUtils().erasure(type.asType()));
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
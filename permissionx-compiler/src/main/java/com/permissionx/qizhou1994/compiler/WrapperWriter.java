@@ -0,0 +1,249 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.compiler;
+
+import com.permissionx.qizhou1994.annotation.NeedsPermissions;
+import com.permissionx.qizhou1994.core.Permissions;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+/**
+ * Writes the wrapper class of one host class. For every annotated method it writes a static
+ * methodNameWithPermissionCheck method, and a nested request class that holds the permissions already split into
+ * normal and special ones, and implements the callbacks by calling the host. So call sites need no classification
+ * and no anonymous callback classes.
+ */
+class WrapperWriter {
+
+    private static final String SUFFIX = "PermissionX";
+
+    private final ProcessingEnvironment env;
+
+    private final TypeElement host;
+
+    private final List<ExecutableElement> methods;
+
+    private final String packageName;
+
+    private final String simpleName;
+
+    private final String hostType;
+
+    private final StringBuilder out = new StringBuilder();
+
+    WrapperWriter(ProcessingEnvironment env, TypeElement host, List<ExecutableElement> methods) {
+        this.env = env;
+        this.host = host;
+        this.methods = methods;
+        PackageElement packageElement = env.getElementUtils().getPackageOf(host);
+        packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        StringBuilder name = new StringBuilder(host.getSimpleName());
+        for (Element e = host.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            name.insert(0, e.getSimpleName() + "_");
+        }
+        simpleName = name + SUFFIX;
+        hostType = env.getTypeUtils().erasure(host.asType()).toString();
+    }
+
+    String getQualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    String write() {
+        out.append("// Generated by permissionx-compiler from ").append(host.getQualifiedName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import com.permissionx.qizhou1994.PermissionX;\n");
+        out.append("import com.permissionx.qizhou1994.callback.ExplainReasonCallback;\n");
+        out.append("import com.permissionx.qizhou1994.callback.ForwardToSettingsCallback;\n");
+        out.append("import com.permissionx.qizhou1994.callback.RequestCallback;\n");
+        out.append("import com.permissionx.qizhou1994.request.ExplainScope;\n");
+        out.append("import com.permissionx.qizhou1994.request.ForwardScope;\n");
+        out.append("import com.permissionx.qizhou1994.request.PermissionBuilder;\n\n");
+        out.append("import java.util.Arrays;\n");
+        out.append("import java.util.List;\n\n");
+        out.append("public final class ").append(simpleName).append(" {\n\n");
+        out.append("    private ").append(simpleName).append("() {\n    }\n");
+        Set<String> requestClassNames = new HashSet<>();
+        for (ExecutableElement method : methods) {
+            String requestClassName = uniqueName(capitalize(method.getSimpleName().toString()) + "Request", requestClassNames);
+            requestClassNames.add(requestClassName);
+            writeMethod(method, requestClassName);
+        }
+        out.append("\n}\n");
+        return out.toString();
+    }
+
+    private void writeMethod(ExecutableElement method, String requestClassName) {
+        NeedsPermissions annotation = method.getAnnotation(NeedsPermissions.class);
+        List<String> parameterNames = new ArrayList<>();
+        List<String> parameterTypes = new ArrayList<>();
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            parameterNames.add(parameters.get(i).getSimpleName().toString());
+            String type = parameters.get(i).asType().toString();
+            if (method.isVarArgs() && i == parameters.size() - 1 && type.endsWith("[]")) {
+                type = type.substring(0, type.length() - 2) + "...";
+            }
+            parameterTypes.add(type);
+        }
+        Set<String> taken = new HashSet<>(parameterNames);
+        String target = uniqueName("target", taken);
+        taken.add(target);
+        String request = uniqueName("request", taken);
+
+        // Wrapper method.
+        out.append("\n    public static void ").append(method.getSimpleName()).append("WithPermissionCheck(")
+                .append(hostType).append(" ").append(target);
+        for (int i = 0; i < parameterNames.size(); i++) {
+            out.append(", ").append(parameterTypes.get(i)).append(" ").append(parameterNames.get(i));
+        }
+        out.append(") {\n");
+        out.append("        ").append(requestClassName).append(" ").append(request).append(" = new ").append(requestClassName)
+                .append("(").append(target);
+        for (String name : parameterNames) {
+            out.append(", ").append(name);
+        }
+        out.append(");\n");
+        out.append("        PermissionBuilder builder = PermissionX.init(").append(target).append(")\n");
+        out.append("                .classifiedPermissions(").append(requestClassName).append(".NORMAL_PERMISSIONS, ")
+                .append(requestClassName).append(".SPECIAL_PERMISSIONS);\n");
+        if (!annotation.explainReason().isEmpty()) {
+            if (annotation.explainReasonBeforeRequest()) {
+                out.append("        builder.explainReasonBeforeRequest();\n");
+            }
+            out.append("        builder.onExplainRequestReason(").append(request).append(");\n");
+        }
+        if (!annotation.forwardToSettings().isEmpty()) {
+            out.append("        builder.onForwardToSettings(").append(request).append(");\n");
+        }
+        out.append("        builder.request(").append(request).append(");\n");
+        out.append("    }\n");
+
+        // Request class.
+        out.append("\n    private static final class ").append(requestClassName).append(" implements RequestCallback");
+        if (!annotation.explainReason().isEmpty()) {
+            out.append(", ExplainReasonCallback");
+        }
+        if (!annotation.forwardToSettings().isEmpty()) {
+            out.append(", ForwardToSettingsCallback");
+        }
+        out.append(" {\n\n");
+        writePermissions(annotation.value());
+        out.append("        private final ").append(hostType).append(" ").append(target).append(";\n\n");
+        for (int i = 0; i < parameterNames.size(); i++) {
+            out.append("        private final ").append(parameterTypes.get(i).replace("...", "[]")).append(" ")
+                    .append(parameterNames.get(i)).append(";\n\n");
+        }
+        out.append("        ").append(requestClassName).append("(").append(hostType).append(" ").append(target);
+        for (int i = 0; i < parameterNames.size(); i++) {
+            out.append(", ").append(parameterTypes.get(i).replace("...", "[]")).append(" ").append(parameterNames.get(i));
+        }
+        out.append(") {\n");
+        out.append("            this.").append(target).append(" = ").append(target).append(";\n");
+        for (String name : parameterNames) {
+            out.append("            this.").append(name).append(" = ").append(name).append(";\n");
+        }
+        out.append("        }\n");
+
+        out.append("\n        @Override\n");
+        out.append("        public void onResult(boolean allGranted, List<String> grantedList, List<String> deniedList) {\n");
+        out.append("            if (allGranted) {\n");
+        out.append("                ").append(target).append(".").append(method.getSimpleName()).append("(");
+        for (int i = 0; i < parameterNames.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append("this.").append(parameterNames.get(i));
+        }
+        out.append(");\n");
+        if (!annotation.onDenied().isEmpty()) {
+            out.append("            } else {\n");
+            out.append("                ").append(target).append(".").append(annotation.onDenied()).append("(deniedList);\n");
+        }
+        out.append("            }\n");
+        out.append("        }\n");
+        if (!annotation.explainReason().isEmpty()) {
+            out.append("\n        @Override\n");
+            out.append("        public void onExplainReason(ExplainScope scope, List<String> deniedList) {\n");
+            out.append("            ").append(target).append(".").append(annotation.explainReason()).append("(scope, deniedList);\n");
+            out.append("        }\n");
+        }
+        if (!annotation.forwardToSettings().isEmpty()) {
+            out.append("\n        @Override\n");
+            out.append("        public void onForwardToSettings(ForwardScope scope, List<String> deniedList) {\n");
+            out.append("            ").append(target).append(".").append(annotation.forwardToSettings()).append("(scope, deniedList);\n");
+            out.append("        }\n");
+        }
+        out.append("\n    }\n");
+    }
+
+    /**
+     * Split the permissions into normal and special ones here, so it doesn't happen on every request.
+     */
+    private void writePermissions(String[] permissions) {
+        Set<String> normalPermissions = new LinkedHashSet<>();
+        Set<String> specialPermissions = new LinkedHashSet<>();
+        for (String permission : permissions) {
+            if (Permissions.isSpecial(permission)) {
+                specialPermissions.add(permission);
+            } else {
+                normalPermissions.add(permission);
+            }
+        }
+        writeList("NORMAL_PERMISSIONS", normalPermissions);
+        writeList("SPECIAL_PERMISSIONS", specialPermissions);
+    }
+
+    private void writeList(String name, Set<String> permissions) {
+        out.append("        static final List<String> ").append(name).append(" = Arrays.<String>asList(");
+        boolean first = true;
+        for (String permission : permissions) {
+            out.append(first ? "" : ", ").append('"').append(escape(permission)).append('"');
+            first = false;
+        }
+        out.append(");\n\n");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String uniqueName(String name, Set<String> taken) {
+        String unique = name;
+        for (int i = 2; taken.contains(unique); i++) {
+            unique = name + i;
+        }
+        return unique;
+    }
+
+}
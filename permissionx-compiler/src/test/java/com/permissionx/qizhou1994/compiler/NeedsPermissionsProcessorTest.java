@@ -0,0 +1,157 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the processor with javac on small hosts. The PermissionX and AndroidX classes the generated code refers to are
+ * replaced by stubs with the same signatures, so the generated code is compiled too.
+ */
+public class NeedsPermissionsProcessorTest {
+
+    private static final String[] STUBS = {
+            "package androidx.fragment.app; public class FragmentActivity {}",
+            "package androidx.fragment.app; public class Fragment {}",
+            "package com.permissionx.qizhou1994.request; public class ExplainScope {}",
+            "package com.permissionx.qizhou1994.request; public class ForwardScope {}",
+            "package com.permissionx.qizhou1994.callback; public interface RequestCallback {"
+                    + " void onResult(boolean allGranted, java.util.List<String> grantedList, java.util.List<String> deniedList); }",
+            "package com.permissionx.qizhou1994.callback; public interface ExplainReasonCallback {"
+                    + " void onExplainReason(com.permissionx.qizhou1994.request.ExplainScope scope, java.util.List<String> deniedList); }",
+            "package com.permissionx.qizhou1994.callback; public interface ExplainReasonCallbackWithBeforeParam {"
+                    + " void onExplainReason(com.permissionx.qizhou1994.request.ExplainScope scope, java.util.List<String> deniedList, boolean beforeRequest); }",
+            "package com.permissionx.qizhou1994.callback; public interface ForwardToSettingsCallback {"
+                    + " void onForwardToSettings(com.permissionx.qizhou1994.request.ForwardScope scope, java.util.List<String> deniedList); }",
+            "package com.permissionx.qizhou1994.request; import com.permissionx.qizhou1994.callback.*; public class PermissionBuilder {"
+                    + " public PermissionBuilder explainReasonBeforeRequest() { return this; }"
+                    + " public PermissionBuilder onExplainRequestReason(ExplainReasonCallback callback) { return this; }"
+                    + " public PermissionBuilder onExplainRequestReason(ExplainReasonCallbackWithBeforeParam callback) { return this; }"
+                    + " public PermissionBuilder onForwardToSettings(ForwardToSettingsCallback callback) { return this; }"
+                    + " public void request(RequestCallback callback) {} }",
+            "package com.permissionx.qizhou1994; public class PermissionMediator {"
+                    + " public com.permissionx.qizhou1994.request.PermissionBuilder classifiedPermissions("
+                    + "java.util.Collection<String> normalPermissions, java.util.Collection<String> specialPermissions) { return null; } }",
+            "package com.permissionx.qizhou1994; public class PermissionX {"
+                    + " public static PermissionMediator init(androidx.fragment.app.FragmentActivity activity) { return null; }"
+                    + " public static PermissionMediator init(androidx.fragment.app.Fragment fragment) { return null; } }",
+    };
+
+    private static final Pattern PUBLIC_TYPE = Pattern.compile("public (?:class|interface) (\\w+)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Test
+    public void generatesWrapperWithClassifiedPermissions() throws IOException {
+        boolean success = compile("package com.example;\n"
+                + "import com.permissionx.qizhou1994.annotation.NeedsPermissions;\n"
+                + "import com.permissionx.qizhou1994.request.ExplainScope;\n"
+                + "import java.util.List;\n"
+                + "public class MainActivity extends androidx.fragment.app.FragmentActivity {\n"
+                + "    @NeedsPermissions(value = {\"android.permission.CAMERA\", \"android.permission.SYSTEM_ALERT_WINDOW\"},\n"
+                + "            explainReason = \"explain\", onDenied = \"denied\")\n"
+                + "    void takePicture(int target, String... names) {}\n"
+                + "    void explain(ExplainScope scope, List<String> deniedList) {}\n"
+                + "    void denied(List<String> deniedList) {}\n"
+                + "}\n");
+
+        assertTrue(diagnostics.getDiagnostics().toString(), success);
+        String wrapper = new String(Files.readAllBytes(new File(folder.getRoot(), "generated/com/example/MainActivityPermissionX.java").toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(wrapper, wrapper.contains("public static void takePictureWithPermissionCheck(com.example.MainActivity target2, int target, java.lang.String... names)"));
+        assertTrue(wrapper, wrapper.contains("NORMAL_PERMISSIONS = Arrays.<String>asList(\"android.permission.CAMERA\");"));
+        assertTrue(wrapper, wrapper.contains("SPECIAL_PERMISSIONS = Arrays.<String>asList(\"android.permission.SYSTEM_ALERT_WINDOW\");"));
+        assertTrue(wrapper, wrapper.contains("implements RequestCallback, ExplainReasonCallback {"));
+        assertFalse(wrapper, wrapper.contains("ForwardToSettingsCallback {"));
+    }
+
+    @Test
+    public void reportsMissingHandler() throws IOException {
+        boolean success = compile("package com.example;\n"
+                + "import com.permissionx.qizhou1994.annotation.NeedsPermissions;\n"
+                + "public class MainActivity extends androidx.fragment.app.FragmentActivity {\n"
+                + "    @NeedsPermissions(value = \"android.permission.CAMERA\", forwardToSettings = \"forward\")\n"
+                + "    void takePicture() {}\n"
+                + "}\n");
+
+        assertFalse(success);
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        assertEquals(Collections.singletonList("Can't find a non-private method forward(com.permissionx.qizhou1994.request.ForwardScope, "
+                + "java.util.List) in com.example.MainActivity"), errors);
+    }
+
+    private boolean compile(String host) throws IOException {
+        List<File> sources = new ArrayList<>();
+        sources.add(write("MainActivity.java", host));
+        for (String stub : STUBS) {
+            Matcher matcher = PUBLIC_TYPE.matcher(stub);
+            assertTrue(matcher.find());
+            sources.add(write(matcher.group(1) + ".java", stub));
+        }
+        File generated = folder.newFolder("generated");
+        File classes = folder.newFolder("classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-s", generated.getPath(), "-d", classes.getPath(), "-classpath", System.getProperty("java.class.path")),
+                    null, fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(Collections.singletonList(new NeedsPermissionsProcessor()));
+            return task.call();
+        }
+    }
+
+    private File write(String name, String source) throws IOException {
+        File dir = folder.newFolder();
+        File file = new File(dir, name);
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Everything needed to continue an in-flight request after the process is killed: the request key, the stage of the chain
+ * and the permission sets. It's written into a byte array for the saved instance state of InvisibleFragment.
+ * <p>
+ * Each permission name is written once. Every set is written as indexes into that table, in its own order.
+ * The format starts with {@link #VERSION}. A checkpoint written by another version is dropped, and the request starts over.
+ */
+public final class ChainCheckpoint {
+
+    /**
+     * Version of the byte format. Change it whenever the format changes.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The key developer gives to the request, used to hand the checkpoint back to the same request.
+     */
+    public final String requestKey;
+
+    /**
+     * Index of the stage the chain was at.
+     */
+    public final int stage;
+
+    /**
+     * If the stage was waiting for a permission or Settings result when the state was saved.
+     */
+    public final boolean awaitingResult;
+
+    /**
+     * If the request reason still needs to be explained before requesting.
+     */
+    public final boolean explainReasonBeforeRequest;
+
+    /**
+     * The permission sets of the request.
+     */
+    public final RequestState state;
+
+    public ChainCheckpoint(String requestKey, int stage, boolean awaitingResult, boolean explainReasonBeforeRequest, RequestState state) {
+        this.requestKey = requestKey;
+        this.stage = stage;
+        this.awaitingResult = awaitingResult;
+        this.explainReasonBeforeRequest = explainReasonBeforeRequest;
+        this.state = state;
+    }
+
+    /**
+     * Replace the permission sets of target with the ones in this checkpoint.
+     * @param target
+     *          The state of the request that continues from this checkpoint.
+     */
+    public void applyTo(RequestState target) {
+        List<Set<String>> from = setsOf(state);
+        List<Set<String>> to = setsOf(target);
+        for (int i = 0; i < from.size(); i++) {
+            to.get(i).clear();
+            to.get(i).addAll(from.get(i));
+        }
+    }
+
+    /**
+     * Write this checkpoint into bytes.
+     * @return The bytes, starting with {@link #VERSION}.
+     */
+    public byte[] toBytes() {
+        List<Set<String>> sets = setsOf(state);
+        List<String> table = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        for (Set<String> set : sets) {
+            for (String permission : set) {
+                if (!indexes.containsKey(permission)) {
+                    indexes.put(permission, table.size());
+                    table.add(permission);
+                }
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(VERSION);
+            out.writeUTF(requestKey);
+            out.writeInt(stage);
+            out.writeBoolean(awaitingResult);
+            out.writeBoolean(explainReasonBeforeRequest);
+            out.writeShort(table.size());
+            for (String permission : table) {
+                out.writeUTF(permission);
+            }
+            for (Set<String> set : sets) {
+                out.writeShort(set.size());
+                for (String permission : set) {
+                    out.writeShort(indexes.get(permission));
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a checkpoint from bytes written by {@link #toBytes()}.
+     * @param bytes
+     *          The bytes to read. May be null.
+     * @return The checkpoint, or null if bytes is null, broken or written by another version.
+     */
+    public static ChainCheckpoint fromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            String requestKey = in.readUTF();
+            int stage = in.readInt();
+            boolean awaitingResult = in.readBoolean();
+            boolean explainReasonBeforeRequest = in.readBoolean();
+            String[] table = new String[in.readUnsignedShort()];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = in.readUTF();
+            }
+            RequestState state = new RequestState(new LinkedHashSet<String>(), new LinkedHashSet<String>());
+            for (Set<String> set : setsOf(state)) {
+                int size = in.readUnsignedShort();
+                for (int i = 0; i < size; i++) {
+                    set.add(table[in.readUnsignedShort()]);
+                }
+            }
+            return new ChainCheckpoint(requestKey, stage, awaitingResult, explainReasonBeforeRequest, state);
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * All sets of a state, in the order they are written.
+     */
+    private static List<Set<String>> setsOf(RequestState state) {
+        List<Set<String>> sets = new ArrayList<>(9);
+        sets.add(state.normalPermissions);
+        sets.add(state.specialPermissions);
+        sets.add(state.permissionsWontRequest);
+        sets.add(state.grantedPermissions);
+        sets.add(state.deniedPermissions);
+        sets.add(state.permanentDeniedPermissions);
+        sets.add(state.tempPermanentDeniedPermissions);
+        sets.add(state.forwardPermissions);
+        sets.add(state.collapsedPermissions);
+        return sets;
+    }
+
+}
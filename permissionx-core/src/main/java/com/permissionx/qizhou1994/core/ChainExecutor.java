@@ -0,0 +1,315 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+/**
+ * Runs the request stages one after another in a loop, instead of letting every stage call the next one.
+ * So the stack depth doesn't grow with the number of stages that finish at once, and the chain can be paused,
+ * resumed and inspected at any time.
+ * <p>
+ * Every move of the chain goes through a transition table indexed by {@link Status} and {@link Event}.
+ * Events that have no entry in the table are ignored.
+ * <p>
+ * Not thread safe. All methods should be called on the main thread.
+ */
+public final class ChainExecutor {
+
+    /**
+     * A step of the chain. It calls {@link ChainExecutor#onStageFinished(Stage)} when it's done,
+     * either before {@link #request()} returns or later, when the user or the system answers.
+     */
+    public interface Stage {
+
+        /**
+         * Do the request logic of this stage.
+         */
+        void request();
+
+    }
+
+    /**
+     * Decides if a stage runs when the chain reaches it. A stage that doesn't run counts as finished at once.
+     */
+    public interface Gate {
+
+        /**
+         * @param index
+         *          Index of the stage the chain reached.
+         * @return True to run the stage, false to skip it.
+         */
+        boolean shouldRun(int index);
+
+    }
+
+    /**
+     * Where the chain is.
+     */
+    public enum Status {
+        /**
+         * Not started yet.
+         */
+        IDLE,
+        /**
+         * Stages are running in the loop.
+         */
+        RUNNING,
+        /**
+         * The current stage is waiting for the user or the system, the loop is not running.
+         */
+        WAITING,
+        /**
+         * Paused by {@link #pause()}. A stage may finish in this status, but the chain won't move on until {@link #resume()}.
+         */
+        PAUSED,
+        /**
+         * All stages are finished.
+         */
+        FINISHED
+    }
+
+    private enum Event {
+        START, RESTORE, STAGE_FINISHED, STAGE_RETURNED, PAUSE, RESUME, CHAIN_END
+    }
+
+    private static final Status[][] TRANSITIONS = new Status[Status.values().length][Event.values().length];
+
+    static {
+        on(Status.IDLE, Event.START, Status.RUNNING);
+        on(Status.IDLE, Event.RESTORE, Status.WAITING);
+        on(Status.RUNNING, Event.STAGE_FINISHED, Status.RUNNING);
+        on(Status.RUNNING, Event.STAGE_RETURNED, Status.WAITING);
+        on(Status.RUNNING, Event.PAUSE, Status.PAUSED);
+        on(Status.RUNNING, Event.CHAIN_END, Status.FINISHED);
+        on(Status.WAITING, Event.STAGE_FINISHED, Status.RUNNING);
+        on(Status.WAITING, Event.PAUSE, Status.PAUSED);
+        on(Status.PAUSED, Event.STAGE_FINISHED, Status.PAUSED);
+        on(Status.PAUSED, Event.RESUME, Status.RUNNING);
+        // FINISHED has no entries. The result is notified once, so a stage that finishes again afterwards,
+        // e.g. from a dialog left open, is ignored instead of running the rest of the chain and notifying again.
+    }
+
+    private static void on(Status from, Event event, Status to) {
+        TRANSITIONS[from.ordinal()][event.ordinal()] = to;
+    }
+
+    private final Stage[] stages;
+
+    private final Gate gate;
+
+    private final Runnable onChainFinished;
+
+    private Status status = Status.IDLE;
+
+    /**
+     * Index of the current stage in {@link #stages}. -1 before the first stage, stages.length when all stages are finished.
+     */
+    private int cursor = -1;
+
+    /**
+     * If the current stage is finished and the loop should move to the next one.
+     */
+    private boolean stageFinished;
+
+    /**
+     * If we are inside {@link #drain()}. Events fired by stages then only change status, the loop picks them up.
+     */
+    private boolean draining;
+
+    /**
+     * @param stages
+     *          Stages to run in order.
+     * @param onChainFinished
+     *          Called each time the last stage finishes.
+     */
+    public ChainExecutor(Stage[] stages, Runnable onChainFinished) {
+        this(stages, null, onChainFinished);
+    }
+
+    /**
+     * @param stages
+     *          Stages to run in order. A stage may be null if the gate never runs it.
+     * @param gate
+     *          Decides if each stage runs, or null to run all of them.
+     * @param onChainFinished
+     *          Called each time the last stage finishes.
+     */
+    public ChainExecutor(Stage[] stages, Gate gate, Runnable onChainFinished) {
+        this.stages = stages.clone();
+        this.gate = gate;
+        this.onChainFinished = onChainFinished;
+    }
+
+    /**
+     * Run the chain from the first stage.
+     */
+    public void start() {
+        if (fire(Event.START)) {
+            stageFinished = true;
+            drain();
+        }
+    }
+
+    /**
+     * Continue a chain that was saved at a stage, e.g. from a {@link ChainCheckpoint}. The stages before it are not run again.
+     * @param index
+     *          Index of the stage to continue from.
+     * @param rerunStage
+     *          True to run this stage again from its beginning. False if the stage is waiting for a result that will
+     *          finish it later.
+     * @return True if the chain continues from this stage, false if the index is out of range or the chain is already started.
+     */
+    public boolean restoreAt(int index, boolean rerunStage) {
+        if (index < 0 || index >= stages.length) {
+            return false;
+        }
+        if (rerunStage) {
+            if (fire(Event.START)) {
+                cursor = index - 1;
+                stageFinished = true;
+                drain();
+                return true;
+            }
+        } else if (fire(Event.RESTORE)) {
+            cursor = index;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by a stage when it's done. A stage the chain already moved past may finish again while the chain is
+     * running or waiting, e.g. after requesting again from a dialog, and the rest of the chain runs again from there.
+     * Once the chain is finished, it's ignored.
+     * @param stage
+     *          The stage that is done.
+     * @return True if the chain accepts this event, false if it's ignored.
+     */
+    public boolean onStageFinished(Stage stage) {
+        int index = indexOf(stage);
+        if (index < 0 || index > cursor || (index == cursor && stageFinished)) {
+            return false;
+        }
+        if (!fire(Event.STAGE_FINISHED)) {
+            return false;
+        }
+        cursor = index;
+        stageFinished = true;
+        drain();
+        return true;
+    }
+
+    /**
+     * Stop the chain from moving on. If the current stage finishes while paused, the next stage won't run until {@link #resume()}.
+     * @return True if the chain is paused, false if it's not started or already finished.
+     */
+    public boolean pause() {
+        return fire(Event.PAUSE);
+    }
+
+    /**
+     * Let a paused chain move on again. If the current stage finished while paused, the next stage runs at once.
+     * @return True if the chain is resumed, false if it's not paused.
+     */
+    public boolean resume() {
+        if (fire(Event.RESUME)) {
+            drain();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Status of the chain.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Index of the current stage, -1 if the chain is not started, or the number of stages if it's finished.
+     */
+    public int getCurrentStageIndex() {
+        return cursor;
+    }
+
+    /**
+     * @return The current stage, or null if the chain is not started or already finished.
+     */
+    public Stage getCurrentStage() {
+        return cursor >= 0 && cursor < stages.length ? stages[cursor] : null;
+    }
+
+    @Override
+    public String toString() {
+        Stage stage = getCurrentStage();
+        return "ChainExecutor{stage=" + (cursor + 1) + "/" + stages.length
+                + (stage != null ? " " + stage.getClass().getSimpleName() : "") + ", status=" + status + "}";
+    }
+
+    /**
+     * The loop. Moves to the next stage as long as the current one is finished, until a stage waits or the chain is paused.
+     */
+    private void drain() {
+        if (draining) {
+            return;
+        }
+        draining = true;
+        try {
+            while (status == Status.RUNNING && stageFinished) {
+                stageFinished = false;
+                cursor++;
+                if (cursor >= stages.length) {
+                    cursor = stages.length;
+                    fire(Event.CHAIN_END);
+                    onChainFinished.run();
+                    continue;
+                }
+                if (gate != null && !gate.shouldRun(cursor)) {
+                    // Nothing to do in this stage, move on without running it.
+                    stageFinished = true;
+                    continue;
+                }
+                stages[cursor].request();
+            }
+            if (status == Status.RUNNING) {
+                fire(Event.STAGE_RETURNED);
+            }
+        } finally {
+            draining = false;
+        }
+    }
+
+    private boolean fire(Event event) {
+        Status next = TRANSITIONS[status.ordinal()][event.ordinal()];
+        if (next == null) {
+            return false;
+        }
+        status = next;
+        return true;
+    }
+
+    private int indexOf(Stage stage) {
+        for (int i = 0; i < stages.length; i++) {
+            if (stages[i] == stage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+/**
+ * What the host should do after the state machine handled a request result.
+ */
+public enum Decision {
+
+    /**
+     * Finish the current task.
+     */
+    FINISH,
+
+    /**
+     * Call ExplainReasonCallback with the denied permissions.
+     */
+    EXPLAIN_REASON,
+
+    /**
+     * Call ForwardToSettingsCallback with the permanently denied permissions.
+     */
+    FORWARD_TO_SETTINGS
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Compares the grant state of permissions kept as a bit set over a sorted permission table, as a PermissionSnapshot keeps it.
+ */
+public final class GrantBits {
+
+    private GrantBits() {
+    }
+
+    /**
+     * Find the permissions whose grant state is different between two bit sets. A permission missing from one table counts
+     * as denied there.
+     * @param names
+     *          The permission table of the newer state, sorted.
+     * @param granted
+     *          Bit i is set if names[i] is granted.
+     * @param previousNames
+     *          The permission table of the older state, sorted. Usually the same array as names.
+     * @param previousGranted
+     *          Bit i is set if previousNames[i] is granted.
+     * @return The permissions that are granted in one state and not in the other, sorted.
+     */
+    public static List<String> diff(String[] names, BitSet granted, String[] previousNames, BitSet previousGranted) {
+        if (names == previousNames) {
+            BitSet changedBits = (BitSet) granted.clone();
+            changedBits.xor(previousGranted);
+            if (changedBits.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<String> changed = new ArrayList<>(changedBits.cardinality());
+            for (int i = changedBits.nextSetBit(0); i >= 0; i = changedBits.nextSetBit(i + 1)) {
+                changed.add(names[i]);
+            }
+            return changed;
+        }
+        // The tables differ, e.g. a state from before the manifest was read again. Walk both by name.
+        List<String> changed = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < names.length || j < previousNames.length) {
+            int order;
+            if (i == names.length) {
+                order = 1;
+            } else if (j == previousNames.length) {
+                order = -1;
+            } else {
+                order = names[i].compareTo(previousNames[j]);
+            }
+            if (order == 0) {
+                if (granted.get(i) != previousGranted.get(j)) {
+                    changed.add(names[i]);
+                }
+                i++;
+                j++;
+            } else if (order < 0) {
+                // Only in the newer table.
+                if (granted.get(i)) {
+                    changed.add(names[i]);
+                }
+                i++;
+            } else {
+                // Only in the older table.
+                if (previousGranted.get(j)) {
+                    changed.add(previousNames[j]);
+                }
+                j++;
+            }
+        }
+        return changed;
+    }
+
+}
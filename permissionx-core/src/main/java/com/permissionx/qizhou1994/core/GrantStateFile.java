@@ -0,0 +1,171 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Reads and writes the file of the last-known grant state. The file holds a magic number, a version, a CRC32 of the
+ * entries and the number of entries, followed by each entry: the length of the permission in UTF-8, the permission and
+ * 1 if it's granted. A file that doesn't match is ignored.
+ * <p>
+ * It's read through a memory map, and written to a temporary file that then replaces it, so a reader never sees a
+ * file that is half written, and of two writers at once the last one wins.
+ */
+public final class GrantStateFile {
+
+    static final int MAGIC = 0x50584C4B;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private GrantStateFile() {
+    }
+
+    /**
+     * Read the grant state from a file.
+     * @param file
+     *          The file to read.
+     * @return The state of each permission. Empty if the file doesn't exist, or doesn't match the magic number, the
+     *          version or the CRC32.
+     * @throws IOException
+     *          If the file exists but can't be read.
+     */
+    public static Map<String, Boolean> read(File file) throws IOException {
+        if (!file.exists()) {
+            return new HashMap<>();
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Write the grant state to a file, replacing what it holds.
+     * @param file
+     *          The file to write. Its directory must exist.
+     * @param states
+     *          The state of each permission.
+     * @throws IOException
+     *          If the file can't be written. It's left as it was then.
+     */
+    public static void write(File file, Map<String, Boolean> states) throws IOException {
+        byte[] bytes = encode(states);
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        boolean renamed = false;
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(bytes);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            renamed = temp.renameTo(file);
+            if (!renamed) {
+                throw new IOException("Can't rename " + temp + " to " + file);
+            }
+        } finally {
+            if (!renamed) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return The bytes of the file holding states.
+     */
+    static byte[] encode(Map<String, Boolean> states) {
+        byte[][] names = new byte[states.size()][];
+        boolean[] grants = new boolean[states.size()];
+        int size = 0;
+        int i = 0;
+        for (Map.Entry<String, Boolean> entry : states.entrySet()) {
+            names[i] = entry.getKey().getBytes(UTF_8);
+            grants[i] = entry.getValue();
+            size += 2 + names[i].length + 1;
+            i++;
+        }
+        ByteBuffer entries = ByteBuffer.allocate(size);
+        for (i = 0; i < names.length; i++) {
+            entries.putShort((short) names[i].length);
+            entries.put(names[i]);
+            entries.put((byte) (grants[i] ? 1 : 0));
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(entries.array());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt((int) crc32.getValue());
+        buffer.putInt(states.size());
+        buffer.put(entries.array());
+        return buffer.array();
+    }
+
+    /**
+     * @return The states held by the bytes of a file, or an empty map if they don't match.
+     */
+    static Map<String, Boolean> decode(ByteBuffer buffer) {
+        Map<String, Boolean> result = new HashMap<>();
+        try {
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return result;
+            }
+            int crc = buffer.getInt();
+            int count = buffer.getInt();
+            byte[] entries = new byte[buffer.remaining()];
+            buffer.get(entries);
+            CRC32 crc32 = new CRC32();
+            crc32.update(entries);
+            if ((int) crc32.getValue() != crc) {
+                // Torn by a process kill during a write, or changed on disk.
+                return result;
+            }
+            ByteBuffer entryBuffer = ByteBuffer.wrap(entries);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[entryBuffer.getShort() & 0xFFFF];
+                entryBuffer.get(name);
+                result.put(new String(name, UTF_8), entryBuffer.get() == 1);
+            }
+        } catch (BufferUnderflowException e) {
+            // The count doesn't match the entries.
+            result.clear();
+        }
+        return result;
+    }
+
+}
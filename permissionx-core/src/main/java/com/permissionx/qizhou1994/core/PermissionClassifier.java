@@ -0,0 +1,126 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Splits the permissions to request into normal permissions, which are requested together,
+ * and special permissions, which need their own request step.
+ */
+public final class PermissionClassifier {
+
+    private PermissionClassifier() {
+    }
+
+    /**
+     * Classify the permissions to request.
+     * @param permissions
+     *          All permissions that app want to request.
+     * @param platform
+     *          The device and app facts.
+     * @return A new RequestState holding the classified permissions.
+     */
+    public static RequestState classify(Collection<String> permissions, Platform platform) {
+        return classify(permissions, platform, Collections.<String>emptySet());
+    }
+
+    /**
+     * Classify the permissions to request, with more special permissions than the ones PermissionX knows.
+     * @param permissions
+     *          All permissions that app want to request.
+     * @param platform
+     *          The device and app facts.
+     * @param otherSpecialPermissions
+     *          More permissions that need their own request step, like the ones with a handler registered by app.
+     * @return A new RequestState holding the classified permissions.
+     */
+    public static RequestState classify(Collection<String> permissions, Platform platform, Set<String> otherSpecialPermissions) {
+        Set<String> normalPermissionSet = new LinkedHashSet<>();
+        Set<String> specialPermissionSet = new LinkedHashSet<>();
+        for (String permission : permissions) {
+            if (Permissions.isSpecial(permission) || otherSpecialPermissions.contains(permission)) {
+                specialPermissionSet.add(permission);
+            } else {
+                normalPermissionSet.add(permission);
+            }
+        }
+        return applyPlatform(normalPermissionSet, specialPermissionSet, platform);
+    }
+
+    /**
+     * Build the request state of permissions that are already split into normal and special ones, like the sets
+     * permissionx-compiler generates at build time. Only the part of the classification that depends on the platform runs.
+     * @param normalPermissions
+     *          Permissions that are requested together. Copied, not changed.
+     * @param specialPermissions
+     *          Permissions that need their own request step. Copied, not changed.
+     * @param platform
+     *          The device and app facts.
+     * @return A new RequestState holding the classified permissions.
+     */
+    public static RequestState classified(Collection<String> normalPermissions, Collection<String> specialPermissions, Platform platform) {
+        return applyPlatform(new LinkedHashSet<>(normalPermissions), new LinkedHashSet<>(specialPermissions), platform);
+    }
+
+    /**
+     * Same as {@link #classified(Collection, Collection, Platform)}, but the normal permissions that are in
+     * otherSpecialPermissions move to the special ones. They were unknown when the sets were built.
+     * @param normalPermissions
+     *          Permissions that are requested together. Copied, not changed.
+     * @param specialPermissions
+     *          Permissions that need their own request step. Copied, not changed.
+     * @param platform
+     *          The device and app facts.
+     * @param otherSpecialPermissions
+     *          More permissions that need their own request step, like the ones with a handler registered by app.
+     * @return A new RequestState holding the classified permissions.
+     */
+    public static RequestState classified(Collection<String> normalPermissions, Collection<String> specialPermissions, Platform platform,
+                                          Set<String> otherSpecialPermissions) {
+        Set<String> normalPermissionSet = new LinkedHashSet<>(normalPermissions);
+        Set<String> specialPermissionSet = new LinkedHashSet<>(specialPermissions);
+        if (!otherSpecialPermissions.isEmpty()) {
+            for (Iterator<String> iterator = normalPermissionSet.iterator(); iterator.hasNext(); ) {
+                String permission = iterator.next();
+                if (otherSpecialPermissions.contains(permission)) {
+                    iterator.remove();
+                    specialPermissionSet.add(permission);
+                }
+            }
+        }
+        return applyPlatform(normalPermissionSet, specialPermissionSet, platform);
+    }
+
+    private static RequestState applyPlatform(Set<String> normalPermissionSet, Set<String> specialPermissionSet, Platform platform) {
+        if (specialPermissionSet.contains(Permissions.ACCESS_BACKGROUND_LOCATION)) {
+            if (platform.sdkInt == Platform.Q ||
+                    (platform.sdkInt == Platform.R && platform.targetSdkVersion < Platform.R)) {
+                // If we request ACCESS_BACKGROUND_LOCATION on Q or on R but targetSdkVersion below R,
+                // We don't need to request specially, just request as normal permission.
+                specialPermissionSet.remove(Permissions.ACCESS_BACKGROUND_LOCATION);
+                normalPermissionSet.add(Permissions.ACCESS_BACKGROUND_LOCATION);
+            }
+        }
+        return new RequestState(normalPermissionSet, specialPermissionSet);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collapses permissions into the permission groups shown to user.
+ */
+public final class PermissionGroups {
+
+    /**
+     * Resolves the permission group of a permission.
+     */
+    public interface GroupResolver {
+
+        /**
+         * @param permission
+         *          Permission to resolve.
+         * @return The group of this permission, or null if it has no group.
+         */
+        String groupOf(String permission);
+
+    }
+
+    private PermissionGroups() {
+    }
+
+    /**
+     * Pick the permissions that need an item on the rationale dialog. If there're two permissions belong to one group,
+     * only the first one is picked. Special permissions always get their own item.
+     * @param permissions
+     *          Permissions shown on the dialog.
+     * @param resolver
+     *          Resolves the group of each permission.
+     * @return The picked permissions in order, each mapped to its group, or to null if it has no group.
+     */
+    public static Map<String, String> pickGroupItems(List<String> permissions, GroupResolver resolver) {
+        Map<String, String> items = new LinkedHashMap<>();
+        Set<String> tempSet = new HashSet<>();
+        for (String permission : permissions) {
+            String permissionGroup = resolver.groupOf(permission);
+            if ((Permissions.isSpecial(permission) && !tempSet.contains(permission))
+                    || (permissionGroup != null && !tempSet.contains(permissionGroup))) {
+                items.put(permission, permissionGroup);
+                tempSet.add(permissionGroup != null ? permissionGroup : permission);
+            }
+        }
+        return items;
+    }
+
+}
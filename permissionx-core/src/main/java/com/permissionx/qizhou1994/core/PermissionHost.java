@@ -0,0 +1,41 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+/**
+ * The system calls the state machine needs, answered by whatever hosts it.
+ * On Android it's backed by the installed PermissionChecker and Fragment.shouldShowRequestPermissionRationale.
+ */
+public interface PermissionHost {
+
+    /**
+     * Check several permissions at once.
+     * @param permissions
+     *          Permissions to check.
+     * @return An array of the same length as permissions. Element i is true if permissions[i] is granted.
+     */
+    boolean[] areGranted(String[] permissions);
+
+    /**
+     * Check if the rationale of a denied permission should be shown. False means it's permanently denied.
+     * @param permission
+     *          Permission to check.
+     * @return True if the user denied this permission but can still be asked again.
+     */
+    boolean shouldShowRationale(String permission);
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+/**
+ * Permission names that the state machine needs to know, and the static permission tables.
+ * Same values as android.Manifest.permission.
+ * <p>
+ * The tables are switch statements over the permission names rather than maps. javac compiles them into a lookup
+ * on the string hash code, so they need no class initialization and allocate nothing.
+ */
+public final class Permissions {
+
+    public static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+
+    public static final String ACCESS_COARSE_LOCATION = "android.permission.ACCESS_COARSE_LOCATION";
+
+    public static final String ACCESS_BACKGROUND_LOCATION = "android.permission.ACCESS_BACKGROUND_LOCATION";
+
+    public static final String SYSTEM_ALERT_WINDOW = "android.permission.SYSTEM_ALERT_WINDOW";
+
+    public static final String WRITE_SETTINGS = "android.permission.WRITE_SETTINGS";
+
+    public static final String MANAGE_EXTERNAL_STORAGE = "android.permission.MANAGE_EXTERNAL_STORAGE";
+
+    public static final String READ_EXTERNAL_STORAGE = "android.permission.READ_EXTERNAL_STORAGE";
+
+    public static final String WRITE_EXTERNAL_STORAGE = "android.permission.WRITE_EXTERNAL_STORAGE";
+
+    public static final String ACCESS_MEDIA_LOCATION = "android.permission.ACCESS_MEDIA_LOCATION";
+
+    /**
+     * Check if a permission is one of the special permissions that we need to handle by special case.
+     * Same as allSpecialPermissions in PermissionMap.kt.
+     * @param permission
+     *          Permission to check.
+     * @return True if the permission needs its own request step.
+     */
+    public static boolean isSpecial(String permission) {
+        switch (permission) {
+            case ACCESS_BACKGROUND_LOCATION:
+            case SYSTEM_ALERT_WINDOW:
+            case WRITE_SETTINGS:
+            case MANAGE_EXTERNAL_STORAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the permission group of a permission on Android Q and R. Since Android Q, the group can not be got from
+     * the system by permission name anymore. Android R has no permission added or removed than Android Q.
+     * Same as permissionMapOnQ in PermissionMap.kt.
+     * @param permission
+     *          Permission to resolve.
+     * @return The group of this permission, or null if it has no group.
+     */
+    public static String groupOnQ(String permission) {
+        switch (permission) {
+            case "android.permission.READ_CALENDAR":
+            case "android.permission.WRITE_CALENDAR":
+                return "android.permission-group.CALENDAR";
+            case "android.permission.READ_CALL_LOG":
+            case "android.permission.WRITE_CALL_LOG":
+            case "android.permission.PROCESS_OUTGOING_CALLS":
+                return "android.permission-group.CALL_LOG";
+            case "android.permission.CAMERA":
+                return "android.permission-group.CAMERA";
+            case "android.permission.READ_CONTACTS":
+            case "android.permission.WRITE_CONTACTS":
+            case "android.permission.GET_ACCOUNTS":
+                return "android.permission-group.CONTACTS";
+            case ACCESS_FINE_LOCATION:
+            case ACCESS_COARSE_LOCATION:
+            case ACCESS_BACKGROUND_LOCATION:
+                return "android.permission-group.LOCATION";
+            case "android.permission.RECORD_AUDIO":
+                return "android.permission-group.MICROPHONE";
+            case "android.permission.READ_PHONE_STATE":
+            case "android.permission.READ_PHONE_NUMBERS":
+            case "android.permission.CALL_PHONE":
+            case "android.permission.ANSWER_PHONE_CALLS":
+            case "com.android.voicemail.permission.ADD_VOICEMAIL":
+            case "android.permission.USE_SIP":
+            case "android.permission.ACCEPT_HANDOVER":
+                return "android.permission-group.PHONE";
+            case "android.permission.BODY_SENSORS":
+                return "android.permission-group.SENSORS";
+            case "android.permission.ACTIVITY_RECOGNITION":
+                return "android.permission-group.ACTIVITY_RECOGNITION";
+            case "android.permission.SEND_SMS":
+            case "android.permission.RECEIVE_SMS":
+            case "android.permission.READ_SMS":
+            case "android.permission.RECEIVE_WAP_PUSH":
+            case "android.permission.RECEIVE_MMS":
+                return "android.permission-group.SMS";
+            case READ_EXTERNAL_STORAGE:
+            case WRITE_EXTERNAL_STORAGE:
+            case ACCESS_MEDIA_LOCATION:
+                return "android.permission-group.STORAGE";
+            default:
+                return null;
+        }
+    }
+
+    private Permissions() {
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+/**
+ * The facts about the device and the app that the state machine depends on.
+ * On Android they come from Build.VERSION.SDK_INT and ApplicationInfo.targetSdkVersion.
+ */
+public final class Platform {
+
+    public static final int M = 23;
+
+    public static final int O = 26;
+
+    public static final int Q = 29;
+
+    public static final int R = 30;
+
+    /**
+     * The API level of the device.
+     */
+    public final int sdkInt;
+
+    /**
+     * The targetSdkVersion of the app.
+     */
+    public final int targetSdkVersion;
+
+    public Platform(int sdkInt, int targetSdkVersion) {
+        this.sdkInt = sdkInt;
+        this.targetSdkVersion = targetSdkVersion;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Picks the permissions to send to the system for a normal permissions request.
+ * Permissions whose prerequisites in the {@link StageGraph} are all denied, and not requested again with them, are left out.
+ * <p>
+ * Before Android O, and for apps targeting below Android O, granting one permission of a group grants the other
+ * permissions of the group that the app declares too. So only the first permission of each group needs to be sent.
+ * The others are kept in {@link RequestState#collapsedPermissions}, and
+ * {@link RequestStateMachine#onNormalPermissionsResult(RequestState, String[], boolean[], PermissionHost, boolean, boolean)}
+ * checks them in one batch when the result comes back.
+ */
+public final class RequestPlanner {
+
+    private RequestPlanner() {
+    }
+
+    /**
+     * Plan a normal permissions request.
+     * @param state
+     *          State of the current request. Its collapsed permissions are replaced.
+     * @param permissions
+     *          Permissions to request.
+     * @param platform
+     *          The device and app facts.
+     * @param graph
+     *          Leaves out the permissions whose prerequisites are all denied. They are reported as denied.
+     * @return The permissions to send to the system, in order.
+     */
+    public static Set<String> plan(RequestState state, Collection<String> permissions, Platform platform, StageGraph graph) {
+        state.collapsedPermissions.clear();
+        Set<String> planned = new LinkedHashSet<>();
+        boolean collapseGroups = platform.sdkInt < Platform.O || platform.targetSdkVersion < Platform.O;
+        Set<String> groups = collapseGroups ? new HashSet<String>() : null;
+        for (String permission : permissions) {
+            // A prerequisite requested again in the same batch isn't denied yet, e.g. when explaining before the
+            // request or requesting again from the rationale dialog.
+            if (graph.isBlocked(permission, state, permissions)) {
+                continue;
+            }
+            if (!collapseGroups) {
+                // Every permission must be requested on its own since Android O.
+                planned.add(permission);
+                continue;
+            }
+            // The group table of Android Q only splits groups further than the older ones, so it never collapses too much.
+            String group = Permissions.groupOnQ(permission);
+            if (group == null || groups.add(group)) {
+                planned.add(permission);
+            } else {
+                state.collapsedPermissions.add(permission);
+            }
+        }
+        return planned;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.List;
+
+/**
+ * The final result of a request, in the shape RequestCallback receives it.
+ */
+public final class RequestResult {
+
+    /**
+     * Indicate if all permissions that are granted.
+     */
+    public final boolean allGranted;
+
+    /**
+     * All permissions that granted by user.
+     */
+    public final List<String> grantedList;
+
+    /**
+     * All permissions that denied by user.
+     */
+    public final List<String> deniedList;
+
+    RequestResult(boolean allGranted, List<String> grantedList, List<String> deniedList) {
+        this.allGranted = allGranted;
+        this.grantedList = grantedList;
+        this.deniedList = deniedList;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * The permission sets of one request. PermissionBuilder holds one, and the state machine moves permissions between the sets.
+ */
+public final class RequestState {
+
+    /**
+     * Normal runtime permissions that app want to request.
+     */
+    public final Set<String> normalPermissions;
+
+    /**
+     * Special permissions that we need to handle by special case.
+     * Such as SYSTEM_ALERT_WINDOW, WRITE_SETTINGS and MANAGE_EXTERNAL_STORAGE.
+     */
+    public final Set<String> specialPermissions;
+
+    /**
+     * Some permissions shouldn't request will be stored here. And notify back to user when request finished.
+     */
+    public final Set<String> permissionsWontRequest = new LinkedHashSet<>();
+
+    /**
+     * Holds permissions that have already granted in the requested permissions.
+     */
+    public final Set<String> grantedPermissions = new LinkedHashSet<>();
+
+    /**
+     * Holds permissions that have been denied in the requested permissions.
+     */
+    public final Set<String> deniedPermissions = new LinkedHashSet<>();
+
+    /**
+     * Holds permissions that have been permanently denied in the requested permissions. (Deny and never ask again)
+     */
+    public final Set<String> permanentDeniedPermissions = new LinkedHashSet<>();
+
+    /**
+     * When we request multiple permissions. Some are denied, some are permanently denied. Denied permissions will be callback first.
+     * And the permanently denied permissions will store in this tempPermanentDeniedPermissions. They will be callback once no more
+     * denied permissions exist.
+     */
+    public final Set<String> tempPermanentDeniedPermissions = new LinkedHashSet<>();
+
+    /**
+     * Holds permissions which should forward to Settings to allow them.
+     * Not all permanently denied permissions should forward to Settings. Only the ones developer think they are necessary should.
+     */
+    public final Set<String> forwardPermissions = new LinkedHashSet<>();
+
+    /**
+     * Holds permissions which {@link RequestPlanner} left out of the current request, because the system grants them
+     * together with another permission of their group. They are checked when the result comes back.
+     */
+    public final Set<String> collapsedPermissions = new LinkedHashSet<>();
+
+    public RequestState(Set<String> normalPermissions, Set<String> specialPermissions) {
+        this.normalPermissions = normalPermissions;
+        this.specialPermissions = specialPermissions;
+    }
+
+    /**
+     * Copy the permission sets, so work off the main thread can move permissions between them while the main thread
+     * still reads this state.
+     * @return A new state with the same permissions in every set.
+     */
+    public RequestState copy() {
+        RequestState copy = new RequestState(new LinkedHashSet<>(normalPermissions), new LinkedHashSet<>(specialPermissions));
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Replace the sets the state machine moves permissions between with the ones of other, typically a {@link #copy()}
+     * the work off the main thread has finished with. The requested permissions are not touched.
+     * @param other
+     *          State to take the sets from.
+     */
+    public void copyFrom(RequestState other) {
+        replace(permissionsWontRequest, other.permissionsWontRequest);
+        replace(grantedPermissions, other.grantedPermissions);
+        replace(deniedPermissions, other.deniedPermissions);
+        replace(permanentDeniedPermissions, other.permanentDeniedPermissions);
+        replace(tempPermanentDeniedPermissions, other.tempPermanentDeniedPermissions);
+        replace(forwardPermissions, other.forwardPermissions);
+        replace(collapsedPermissions, other.collapsedPermissions);
+    }
+
+    private static void replace(Set<String> set, Set<String> with) {
+        if (set != with) {
+            set.clear();
+            set.addAll(with);
+        }
+    }
+
+    /**
+     * Check if all the normal permissions are granted now.
+     * @return True if every normal permission is in the granted set.
+     */
+    public boolean allNormalPermissionsGranted() {
+        return grantedPermissions.size() == normalPermissions.size();
+    }
+
+}
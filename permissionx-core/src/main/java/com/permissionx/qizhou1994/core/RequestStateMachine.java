@@ -0,0 +1,227 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The decision logic of a permission request. Takes the result of each request step, moves permissions between the sets of
+ * {@link RequestState}, and tells the host what to do next. All system calls go through {@link PermissionHost}.
+ */
+public final class RequestStateMachine {
+
+    private RequestStateMachine() {
+    }
+
+    /**
+     * Handle result of normal permissions request.
+     * @param state
+     *          State of the current request.
+     * @param permissions
+     *          Permissions that were requested. May leave out normal permissions that were granted before the request.
+     *          If one of those is turned off by the time the result comes back, it's handled as if it was denied in
+     *          permissions: explained if it has a rationale, forwarded to settings otherwise.
+     * @param grantResults
+     *          Element i is true if permissions[i] is granted.
+     * @param host
+     *          Answers the rationale and grant checks.
+     * @param hasExplainReasonCallback
+     *          If there's an ExplainReasonCallback to call.
+     * @param hasForwardToSettingsCallback
+     *          If there's a ForwardToSettingsCallback to call.
+     * @return {@link Decision#EXPLAIN_REASON} to explain the denied permissions, {@link Decision#FORWARD_TO_SETTINGS} to forward
+     *          the permanently denied permissions, or {@link Decision#FINISH}. Check {@link RequestState#allNormalPermissionsGranted()}
+     *          to know if it finishes because all permissions are granted.
+     */
+    public static Decision onNormalPermissionsResult(RequestState state, String[] permissions, boolean[] grantResults, PermissionHost host,
+                                                     boolean hasExplainReasonCallback, boolean hasForwardToSettingsCallback) {
+        // User may turn granted permissions off in settings at any time, so fill the granted permission set again from this result.
+        // The ones granted before may not be requested again, they are checked below instead.
+        state.grantedPermissions.clear();
+        List<String> showReasonList = new ArrayList<>(); // holds denied permissions in the request permissions.
+        List<String> forwardList = new ArrayList<>(); // hold permanently denied permissions in the request permissions.
+        for (int i = 0; i < permissions.length; i++) {
+            applyGrantResult(state, permissions[i], grantResults[i], host, showReasonList, forwardList);
+        }
+        if (!state.collapsedPermissions.isEmpty()) {
+            // Permissions left out by RequestPlanner share the answer of their group. Check them in one batch, and handle them as requested.
+            String[] collapsed = state.collapsedPermissions.toArray(new String[0]);
+            state.collapsedPermissions.clear();
+            boolean[] collapsedGranted = host.areGranted(collapsed);
+            for (int i = 0; i < collapsed.length; i++) {
+                applyGrantResult(state, collapsed[i], collapsedGranted[i], host, showReasonList, forwardList);
+            }
+        }
+        List<String> deniedPermissions = new ArrayList<>(); // used to validate the deniedPermissions and permanentDeniedPermissions
+        deniedPermissions.addAll(state.deniedPermissions);
+        deniedPermissions.addAll(state.permanentDeniedPermissions);
+        int deniedCount = deniedPermissions.size();
+        // If only the ungranted permissions were requested, the ones granted before are neither in the result nor denied.
+        // Check them in the same batch to fill the granted permission set again.
+        for (String permission : state.normalPermissions) {
+            if (!state.grantedPermissions.contains(permission) && !state.deniedPermissions.contains(permission)
+                    && !state.permanentDeniedPermissions.contains(permission)) {
+                deniedPermissions.add(permission);
+            }
+        }
+        // maybe user can turn some permissions on in settings that we didn't request, so check the denied permissions again for safety.
+        if (!deniedPermissions.isEmpty()) {
+            String[] permissionsToCheck = deniedPermissions.toArray(new String[0]);
+            boolean[] granted = host.areGranted(permissionsToCheck);
+            for (int i = 0; i < permissionsToCheck.length; i++) {
+                if (granted[i]) {
+                    state.deniedPermissions.remove(permissionsToCheck[i]);
+                    state.grantedPermissions.add(permissionsToCheck[i]);
+                } else if (i >= deniedCount) {
+                    // Granted before but turned off since, without being requested. Handle it as if it was denied in this
+                    // result, so only the ones with a rationale are explained and the others are forwarded to settings.
+                    applyGrantResult(state, permissionsToCheck[i], false, host, showReasonList, forwardList);
+                }
+            }
+        }
+        if (state.allNormalPermissionsGranted()) { // If all permissions are granted, finish current task directly.
+            return Decision.FINISH;
+        }
+        // If explainReasonCallback is not null and there're denied permissions. Try the ExplainReasonCallback.
+        if (hasExplainReasonCallback && !showReasonList.isEmpty()) {
+            // store these permanently denied permissions or they will be lost when request again.
+            state.tempPermanentDeniedPermissions.addAll(forwardList);
+            return Decision.EXPLAIN_REASON;
+        }
+        // If forwardToSettingsCallback is not null and there're permanently denied permissions. Try the ForwardToSettingsCallback.
+        if (hasForwardToSettingsCallback && (!forwardList.isEmpty() || !state.tempPermanentDeniedPermissions.isEmpty())) {
+            state.tempPermanentDeniedPermissions.clear(); // no need to store them anymore once onForwardToSettings callback.
+            return Decision.FORWARD_TO_SETTINGS;
+        }
+        return Decision.FINISH;
+    }
+
+    /**
+     * Move one permission of a normal permissions request into the set its result belongs to.
+     */
+    private static void applyGrantResult(RequestState state, String permission, boolean granted, PermissionHost host,
+                                         List<String> showReasonList, List<String> forwardList) {
+        if (granted) {
+            state.grantedPermissions.add(permission);
+            // Remove granted permissions from deniedPermissions and permanentDeniedPermissions set.
+            state.deniedPermissions.remove(permission);
+            state.permanentDeniedPermissions.remove(permission);
+        } else {
+            // Denied permission can turn into permanent denied permissions, but permanent denied permission can not turn into denied permissions.
+            boolean shouldShowRationale = host.shouldShowRationale(permission);
+            if (shouldShowRationale) {
+                showReasonList.add(permission);
+                state.deniedPermissions.add(permission);
+                // So there's no need to remove the current permission from permanentDeniedPermissions because it won't be there.
+            } else {
+                forwardList.add(permission);
+                state.permanentDeniedPermissions.add(permission);
+                // We must remove the current permission from deniedPermissions because it is permanent denied permission now.
+                state.deniedPermissions.remove(permission);
+            }
+        }
+    }
+
+    /**
+     * Handle result of ACCESS_BACKGROUND_LOCATION permission request.
+     * @param state
+     *          State of the current request.
+     * @param host
+     *          Answers the rationale and grant checks.
+     * @param hasExplainReasonCallback
+     *          If there's an ExplainReasonCallback to call.
+     * @param hasForwardToSettingsCallback
+     *          If there's a ForwardToSettingsCallback to call.
+     * @return What to do with ACCESS_BACKGROUND_LOCATION next.
+     */
+    public static Decision onBackgroundLocationPermissionResult(RequestState state, PermissionHost host,
+                                                                boolean hasExplainReasonCallback, boolean hasForwardToSettingsCallback) {
+        String permission = Permissions.ACCESS_BACKGROUND_LOCATION;
+        if (host.areGranted(new String[]{permission})[0]) {
+            state.grantedPermissions.add(permission);
+            // Remove granted permissions from deniedPermissions and permanentDeniedPermissions set.
+            state.deniedPermissions.remove(permission);
+            state.permanentDeniedPermissions.remove(permission);
+            return Decision.FINISH;
+        }
+        boolean shouldShowRationale = host.shouldShowRationale(permission);
+        // If explainReasonCallback is not null and we should show rationale. Try the ExplainReasonCallback.
+        if (hasExplainReasonCallback && shouldShowRationale) {
+            return Decision.EXPLAIN_REASON;
+        }
+        // If forwardToSettingsCallback is not null and we shouldn't show rationale. Try the ForwardToSettingsCallback.
+        if (hasForwardToSettingsCallback && !shouldShowRationale) {
+            return Decision.FORWARD_TO_SETTINGS;
+        }
+        return Decision.FINISH;
+    }
+
+    /**
+     * Assemble the final result when the last task finishes. Special permissions are checked again in one batch,
+     * because user may allow them in Settings at any time.
+     * @param state
+     *          State of the current request.
+     * @param platform
+     *          The device and app facts.
+     * @param host
+     *          Answers the grant checks.
+     * @return The result to notify.
+     */
+    public static RequestResult assembleResult(RequestState state, Platform platform, PermissionHost host) {
+        List<String> deniedList = new ArrayList<>();
+        deniedList.addAll(state.deniedPermissions);
+        deniedList.addAll(state.permanentDeniedPermissions);
+        deniedList.addAll(state.permissionsWontRequest);
+        List<String> specialPermissionsToCheck = new ArrayList<>(4);
+        if (state.specialPermissions.contains(Permissions.ACCESS_BACKGROUND_LOCATION)) {
+            specialPermissionsToCheck.add(Permissions.ACCESS_BACKGROUND_LOCATION);
+        }
+        if (state.specialPermissions.contains(Permissions.SYSTEM_ALERT_WINDOW)
+                && platform.sdkInt >= Platform.M && platform.targetSdkVersion >= Platform.M) {
+            specialPermissionsToCheck.add(Permissions.SYSTEM_ALERT_WINDOW);
+        }
+        if (state.specialPermissions.contains(Permissions.WRITE_SETTINGS)
+                && platform.sdkInt >= Platform.M && platform.targetSdkVersion >= Platform.M) {
+            specialPermissionsToCheck.add(Permissions.WRITE_SETTINGS);
+        }
+        if (state.specialPermissions.contains(Permissions.MANAGE_EXTERNAL_STORAGE)) {
+            specialPermissionsToCheck.add(Permissions.MANAGE_EXTERNAL_STORAGE);
+        }
+        for (String permission : state.specialPermissions) {
+            // Special permissions that app added with a handler of its own.
+            if (!Permissions.isSpecial(permission)) {
+                specialPermissionsToCheck.add(permission);
+            }
+        }
+        if (!specialPermissionsToCheck.isEmpty()) {
+            String[] permissions = specialPermissionsToCheck.toArray(new String[0]);
+            boolean[] granted = host.areGranted(permissions);
+            for (int i = 0; i < permissions.length; i++) {
+                // There's no MANAGE_EXTERNAL_STORAGE permission below Android R, it's always denied.
+                boolean supported = platform.sdkInt >= Platform.R || !Permissions.MANAGE_EXTERNAL_STORAGE.equals(permissions[i]);
+                if (supported && granted[i]) {
+                    state.grantedPermissions.add(permissions[i]);
+                } else {
+                    deniedList.add(permissions[i]);
+                }
+            }
+        }
+        return new RequestResult(deniedList.isEmpty(), new ArrayList<>(state.grantedPermissions), deniedList);
+    }
+
+}
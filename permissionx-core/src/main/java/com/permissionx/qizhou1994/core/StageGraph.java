@@ -0,0 +1,209 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The request stages and the permissions they depend on. Every special permission has its own stage, named after the
+ * permission, and all normal permissions share the {@link #NORMAL_PERMISSIONS} stage.
+ * <p>
+ * The graph decides the order of the stages, so a stage runs after the stages that request its prerequisites. It also
+ * tells when a stage or a permission is not worth requesting anymore, because all of its prerequisites are denied.
+ */
+public final class StageGraph {
+
+    /**
+     * The stage that requests all normal permissions together.
+     */
+    public static final String NORMAL_PERMISSIONS = "normal";
+
+    private final List<String> stages = new ArrayList<>();
+
+    /**
+     * Permission to the permissions of which at least one must be granted before requesting it.
+     */
+    private final Map<String, String[]> prerequisites = new HashMap<>();
+
+    private List<String> order;
+
+    /**
+     * @return The stages and prerequisites of PermissionX. Background location needs foreground location, and media
+     *          location needs storage.
+     */
+    public static StageGraph defaults() {
+        return new StageGraph()
+                .addStage(NORMAL_PERMISSIONS)
+                .addStage(Permissions.ACCESS_BACKGROUND_LOCATION)
+                .addStage(Permissions.SYSTEM_ALERT_WINDOW)
+                .addStage(Permissions.WRITE_SETTINGS)
+                .addStage(Permissions.MANAGE_EXTERNAL_STORAGE)
+                .require(Permissions.ACCESS_BACKGROUND_LOCATION, Permissions.ACCESS_FINE_LOCATION, Permissions.ACCESS_COARSE_LOCATION)
+                .require(Permissions.ACCESS_MEDIA_LOCATION, Permissions.READ_EXTERNAL_STORAGE, Permissions.WRITE_EXTERNAL_STORAGE);
+    }
+
+    /**
+     * Declare a stage. Stages without an order between them run in the order they are added.
+     * @param stage
+     *          The special permission the stage requests, or {@link #NORMAL_PERMISSIONS}.
+     * @return StageGraph itself.
+     */
+    public StageGraph addStage(String stage) {
+        if (!stages.contains(stage)) {
+            stages.add(stage);
+            order = null;
+        }
+        return this;
+    }
+
+    /**
+     * Remove a stage and the prerequisites declared for it. The stages after it move up by one.
+     * @param stage
+     *          The special permission the stage requests.
+     * @return StageGraph itself.
+     */
+    public StageGraph removeStage(String stage) {
+        if (stages.remove(stage)) {
+            prerequisites.remove(stage);
+            order = null;
+        }
+        return this;
+    }
+
+    /**
+     * Declare that a permission is only worth requesting when at least one of the given permissions is granted.
+     * @param permission
+     *          The dependent permission.
+     * @param requiresAnyOf
+     *          The prerequisites.
+     * @return StageGraph itself.
+     */
+    public StageGraph require(String permission, String... requiresAnyOf) {
+        prerequisites.put(permission, requiresAnyOf.clone());
+        order = null;
+        return this;
+    }
+
+    /**
+     * @return All stages in the order to run them. Every stage comes after the stages that request its prerequisites.
+     * @throws IllegalStateException if the prerequisites form a cycle.
+     */
+    public List<String> order() {
+        if (order == null) {
+            order = Collections.unmodifiableList(sort());
+        }
+        return order;
+    }
+
+    /**
+     * Check if all prerequisites of a stage or a permission are already denied in this request, so requesting it
+     * can't be granted anyway.
+     * @param permission
+     *          A stage, or a permission of the normal permissions stage.
+     * @param state
+     *          State of the current request.
+     * @return True if it has prerequisites, and every one of them is denied.
+     */
+    public boolean isBlocked(String permission, RequestState state) {
+        return isBlocked(permission, state, Collections.<String>emptySet());
+    }
+
+    /**
+     * Check if all prerequisites of a permission are already denied in this request, leaving out the prerequisites
+     * that are requested again together with it. Those get another answer first.
+     * @param permission
+     *          A stage, or a permission of the normal permissions stage.
+     * @param state
+     *          State of the current request.
+     * @param requestedNow
+     *          The permissions requested together with it.
+     * @return True if it has prerequisites, and every one of them is denied and not requested again.
+     */
+    public boolean isBlocked(String permission, RequestState state, Collection<String> requestedNow) {
+        String[] requiresAnyOf = prerequisites.get(permission);
+        if (requiresAnyOf == null) {
+            return false;
+        }
+        for (String prerequisite : requiresAnyOf) {
+            if (requestedNow.contains(prerequisite)
+                    || (!state.deniedPermissions.contains(prerequisite) && !state.permanentDeniedPermissions.contains(prerequisite))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Kahn's algorithm over the stages. A stage depends on the stages that request the prerequisites of its permission.
+     * The first ready stage in the order of adding runs first, so the order only changes where a dependency needs it.
+     */
+    private List<String> sort() {
+        int size = stages.size();
+        boolean[][] dependsOn = new boolean[size][size];
+        int[] pending = new int[size];
+        for (int i = 0; i < size; i++) {
+            String[] requiresAnyOf = prerequisites.get(stages.get(i));
+            if (requiresAnyOf == null) {
+                continue;
+            }
+            for (String prerequisite : requiresAnyOf) {
+                int j = stageOf(prerequisite);
+                if (j >= 0 && j != i && !dependsOn[i][j]) {
+                    dependsOn[i][j] = true;
+                    pending[i]++;
+                }
+            }
+        }
+        List<String> sorted = new ArrayList<>(size);
+        boolean[] done = new boolean[size];
+        while (sorted.size() < size) {
+            int next = -1;
+            for (int i = 0; i < size; i++) {
+                if (!done[i] && pending[i] == 0) {
+                    next = i;
+                    break;
+                }
+            }
+            if (next < 0) {
+                throw new IllegalStateException("The prerequisites of stages form a cycle: " + stages);
+            }
+            done[next] = true;
+            sorted.add(stages.get(next));
+            for (int i = 0; i < size; i++) {
+                if (dependsOn[i][next]) {
+                    pending[i]--;
+                }
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * @return Index of the stage that requests the permission, or -1 if there's none.
+     */
+    private int stageOf(String permission) {
+        int index = stages.indexOf(permission);
+        return index >= 0 ? index : stages.indexOf(NORMAL_PERMISSIONS);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes checkpoints into bytes and reads them back.
+ */
+public class ChainCheckpointTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    private static final String CONTACTS = "android.permission.READ_CONTACTS";
+
+    @Test
+    public void roundTripKeepsStageAndSetOrder() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)),
+                new LinkedHashSet<>(Arrays.asList(Permissions.SYSTEM_ALERT_WINDOW)));
+        state.permanentDeniedPermissions.add(CONTACTS);
+        state.permanentDeniedPermissions.add(CAMERA);
+        state.forwardPermissions.add(CONTACTS);
+        ChainCheckpoint checkpoint = ChainCheckpoint.fromBytes(new ChainCheckpoint("camera", 2, true, false, state).toBytes());
+        assertEquals("camera", checkpoint.requestKey);
+        assertEquals(2, checkpoint.stage);
+        assertTrue(checkpoint.awaitingResult);
+
+        RequestState restored = new RequestState(new LinkedHashSet<String>(), new LinkedHashSet<String>());
+        restored.grantedPermissions.add(CAMERA);
+        checkpoint.applyTo(restored);
+        assertEquals(Arrays.asList(CAMERA, CONTACTS), Arrays.asList(restored.normalPermissions.toArray()));
+        assertEquals(Arrays.asList(CONTACTS, CAMERA), Arrays.asList(restored.permanentDeniedPermissions.toArray()));
+        assertEquals(Arrays.asList(CONTACTS), Arrays.asList(restored.forwardPermissions.toArray()));
+        assertTrue(restored.grantedPermissions.isEmpty());
+    }
+
+    @Test
+    public void otherVersionOrBrokenBytesAreDropped() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA)), new LinkedHashSet<String>());
+        byte[] bytes = new ChainCheckpoint("camera", 0, false, false, state).toBytes();
+        bytes[3] = (byte) (ChainCheckpoint.VERSION + 1);
+        assertNull(ChainCheckpoint.fromBytes(bytes));
+        assertNull(ChainCheckpoint.fromBytes(new byte[]{0, 0, 0, 1, 0}));
+        assertNull(ChainCheckpoint.fromBytes(null));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives ChainExecutor with stages that finish at once or wait to be finished by the test.
+ */
+public class ChainExecutorTest {
+
+    private final List<String> log = new ArrayList<>();
+
+    private ChainExecutor executor;
+
+    private int finishedCount;
+
+    private int maxDepth;
+
+    private class TestStage implements ChainExecutor.Stage {
+
+        final String name;
+
+        final boolean finishAtOnce;
+
+        TestStage(String name, boolean finishAtOnce) {
+            this.name = name;
+            this.finishAtOnce = finishAtOnce;
+        }
+
+        @Override
+        public void request() {
+            log.add(name);
+            maxDepth = Math.max(maxDepth, Thread.currentThread().getStackTrace().length);
+            if (finishAtOnce) {
+                executor.onStageFinished(this);
+            }
+        }
+
+    }
+
+    private ChainExecutor newExecutor(ChainExecutor.Stage... stages) {
+        executor = new ChainExecutor(stages, new Runnable() {
+            @Override
+            public void run() {
+                finishedCount++;
+            }
+        });
+        return executor;
+    }
+
+    @Test
+    public void stagesFinishingAtOnceDoNotNest() {
+        TestStage[] stages = new TestStage[50];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new TestStage("s" + i, true);
+        }
+        newExecutor(stages).start();
+        assertEquals(50, log.size());
+        assertEquals(1, finishedCount);
+        assertEquals(ChainExecutor.Status.FINISHED, executor.getStatus());
+        assertNull(executor.getCurrentStage());
+        int depthOfOne = maxDepth;
+        maxDepth = 0;
+        log.clear();
+        newExecutor(new TestStage("only", true)).start();
+        assertEquals(depthOfOne, maxDepth);
+    }
+
+    @Test
+    public void waitingStageResumesTheLoop() {
+        TestStage first = new TestStage("first", true);
+        TestStage waiting = new TestStage("waiting", false);
+        TestStage last = new TestStage("last", true);
+        newExecutor(first, waiting, last).start();
+        assertEquals(ChainExecutor.Status.WAITING, executor.getStatus());
+        assertSame(waiting, executor.getCurrentStage());
+        assertEquals(1, executor.getCurrentStageIndex());
+        assertFalse(executor.onStageFinished(last));
+        assertTrue(executor.onStageFinished(waiting));
+        assertEquals(ChainExecutor.Status.FINISHED, executor.getStatus());
+        assertEquals(1, finishedCount);
+    }
+
+    @Test
+    public void pausedChainHoldsTheNextStage() {
+        TestStage waiting = new TestStage("waiting", false);
+        TestStage last = new TestStage("last", true);
+        newExecutor(waiting, last).start();
+        assertTrue(executor.pause());
+        assertTrue(executor.onStageFinished(waiting));
+        assertEquals(ChainExecutor.Status.PAUSED, executor.getStatus());
+        assertEquals(1, log.size());
+        assertTrue(executor.resume());
+        assertEquals(2, log.size());
+        assertEquals(1, finishedCount);
+        assertFalse(executor.resume());
+    }
+
+    @Test
+    public void stageMovedPastRunsTheRestAgain() {
+        TestStage first = new TestStage("first", true);
+        TestStage waiting = new TestStage("waiting", false);
+        TestStage last = new TestStage("last", true);
+        newExecutor(first, waiting, last).start();
+        assertTrue(executor.onStageFinished(first));
+        assertEquals(3, log.size());
+        assertEquals("waiting", log.get(2));
+        assertEquals(ChainExecutor.Status.WAITING, executor.getStatus());
+        assertEquals(0, finishedCount);
+    }
+
+    @Test
+    public void finishedChainIgnoresLateStages() {
+        final TestStage first = new TestStage("first", true);
+        TestStage last = new TestStage("last", true);
+        executor = new ChainExecutor(new ChainExecutor.Stage[]{first, last}, new Runnable() {
+            @Override
+            public void run() {
+                finishedCount++;
+                // A stage finishing again while the result is notified.
+                assertFalse(executor.onStageFinished(first));
+            }
+        });
+        executor.start();
+        assertEquals(ChainExecutor.Status.FINISHED, executor.getStatus());
+        assertFalse(executor.onStageFinished(first));
+        assertFalse(executor.onStageFinished(last));
+        assertFalse(executor.pause());
+        assertFalse(executor.resume());
+        assertEquals(ChainExecutor.Status.FINISHED, executor.getStatus());
+        assertEquals(2, executor.getCurrentStageIndex());
+        assertEquals(2, log.size());
+        assertEquals(1, finishedCount);
+    }
+
+}
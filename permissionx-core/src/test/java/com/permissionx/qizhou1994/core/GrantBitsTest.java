@@ -0,0 +1,76 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the diff of grant states kept as bit sets, on the same permission table and on different ones.
+ */
+public class GrantBitsTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    private static final String CONTACTS = "android.permission.READ_CONTACTS";
+
+    private static final String LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+
+    private static final String OVERLAY = "android.permission.SYSTEM_ALERT_WINDOW";
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    @Test
+    public void sameTableReportsFlippedBits() {
+        String[] names = {LOCATION, CAMERA, CONTACTS};
+        assertEquals(Arrays.asList(LOCATION, CONTACTS), GrantBits.diff(names, bits(1, 2), names, bits(0, 1)));
+        assertEquals(Collections.emptyList(), GrantBits.diff(names, bits(0, 2), names, bits(0, 2)));
+    }
+
+    @Test
+    public void sameNamesInAnotherTableCompareByName() {
+        String[] names = {LOCATION, CAMERA, CONTACTS};
+        String[] previousNames = names.clone();
+        assertEquals(Arrays.asList(CAMERA), GrantBits.diff(names, bits(0, 1), previousNames, bits(0)));
+        assertEquals(Collections.emptyList(), GrantBits.diff(names, bits(2), previousNames, bits(2)));
+    }
+
+    @Test
+    public void differentTablesCountMissingPermissionsAsDenied() {
+        String[] names = {LOCATION, CAMERA, OVERLAY};
+        String[] previousNames = {LOCATION, CAMERA, CONTACTS};
+        // OVERLAY is new and granted, CONTACTS is gone and was granted, CAMERA is unchanged, LOCATION was revoked.
+        assertEquals(Arrays.asList(LOCATION, CONTACTS, OVERLAY),
+                GrantBits.diff(names, bits(1, 2), previousNames, bits(0, 1, 2)));
+        // Denied on both sides, even if missing from one of them, is no change.
+        assertEquals(Collections.emptyList(), GrantBits.diff(names, bits(1), previousNames, bits(1)));
+        assertEquals(Arrays.asList(CAMERA), GrantBits.diff(names, bits(1), new String[0], new BitSet()));
+        assertEquals(Arrays.asList(CONTACTS), GrantBits.diff(new String[0], new BitSet(), previousNames, bits(2)));
+    }
+
+}
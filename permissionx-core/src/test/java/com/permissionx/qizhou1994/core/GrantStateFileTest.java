@@ -0,0 +1,105 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes and reads the file of the last-known grant state, and checks that broken files are ignored.
+ */
+public class GrantStateFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, Boolean> states() {
+        Map<String, Boolean> states = new HashMap<>();
+        states.put("android.permission.CAMERA", true);
+        states.put("android.permission.READ_CONTACTS", false);
+        states.put("android.permission.SYSTEM_ALERT_WINDOW", true);
+        return states;
+    }
+
+    @Test
+    public void writtenStateIsReadBack() throws IOException {
+        File file = new File(folder.getRoot(), "state");
+        assertTrue(GrantStateFile.read(file).isEmpty());
+        GrantStateFile.write(file, states());
+        assertEquals(states(), GrantStateFile.read(file));
+
+        Map<String, Boolean> changed = states();
+        changed.put("android.permission.READ_CONTACTS", true);
+        changed.remove("android.permission.SYSTEM_ALERT_WINDOW");
+        GrantStateFile.write(file, changed);
+        assertEquals(changed, GrantStateFile.read(file));
+        // The temporary file is renamed, nothing is left beside it.
+        assertArrayEquals(new String[]{"state"}, folder.getRoot().list());
+    }
+
+    @Test
+    public void wrongCrcIsIgnored() {
+        byte[] bytes = GrantStateFile.encode(states());
+        bytes[bytes.length - 2] ^= 1;
+        assertTrue(GrantStateFile.decode(ByteBuffer.wrap(bytes)).isEmpty());
+    }
+
+    @Test
+    public void tornFileIsIgnored() throws IOException {
+        File file = new File(folder.getRoot(), "state");
+        GrantStateFile.write(file, states());
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(randomAccessFile.length() - 5);
+        randomAccessFile.close();
+        assertTrue(GrantStateFile.read(file).isEmpty());
+
+        byte[] bytes = GrantStateFile.encode(states());
+        assertTrue(GrantStateFile.decode(ByteBuffer.wrap(Arrays.copyOf(bytes, GrantStateFile.HEADER_SIZE - 1))).isEmpty());
+    }
+
+    @Test
+    public void otherVersionOrMagicIsIgnored() {
+        byte[] bytes = GrantStateFile.encode(states());
+        ByteBuffer.wrap(bytes).putInt(4, GrantStateFile.VERSION + 1);
+        assertTrue(GrantStateFile.decode(ByteBuffer.wrap(bytes)).isEmpty());
+
+        bytes = GrantStateFile.encode(states());
+        ByteBuffer.wrap(bytes).putInt(0, 0);
+        assertTrue(GrantStateFile.decode(ByteBuffer.wrap(bytes)).isEmpty());
+    }
+
+    @Test
+    public void countBeyondTheEntriesIsIgnored() {
+        byte[] bytes = GrantStateFile.encode(states());
+        ByteBuffer.wrap(bytes).putInt(12, 4);
+        assertTrue(GrantStateFile.decode(ByteBuffer.wrap(bytes)).isEmpty());
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the request state machine on a plain JVM with a fake host.
+ */
+public class RequestStateMachineTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    private static final String CONTACTS = "android.permission.READ_CONTACTS";
+
+    private static final String WRITE_CONTACTS = "android.permission.WRITE_CONTACTS";
+
+    private static final String INSTALL_PACKAGES = "android.permission.REQUEST_INSTALL_PACKAGES";
+
+    private static class FakeHost implements PermissionHost {
+
+        final Set<String> granted = new HashSet<>();
+
+        final Set<String> rationale = new HashSet<>();
+
+        int grantChecks;
+
+        @Override
+        public boolean[] areGranted(String[] permissions) {
+            grantChecks++;
+            boolean[] results = new boolean[permissions.length];
+            for (int i = 0; i < permissions.length; i++) {
+                results[i] = granted.contains(permissions[i]);
+            }
+            return results;
+        }
+
+        @Override
+        public boolean shouldShowRationale(String permission) {
+            return rationale.contains(permission);
+        }
+
+    }
+
+    @Test
+    public void backgroundLocationIsNormalOnQ() {
+        RequestState state = PermissionClassifier.classify(Arrays.asList(CAMERA, Permissions.ACCESS_BACKGROUND_LOCATION),
+                new Platform(Platform.Q, Platform.R));
+        assertEquals(Arrays.asList(CAMERA, Permissions.ACCESS_BACKGROUND_LOCATION), Arrays.asList(state.normalPermissions.toArray()));
+        assertTrue(state.specialPermissions.isEmpty());
+    }
+
+    @Test
+    public void deniedWithRationaleExplainsReason() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)), new LinkedHashSet<String>());
+        FakeHost host = new FakeHost();
+        host.granted.add(CAMERA);
+        host.rationale.add(CONTACTS);
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CAMERA, CONTACTS},
+                new boolean[]{true, false}, host, true, true);
+        assertEquals(Decision.EXPLAIN_REASON, decision);
+        assertFalse(state.allNormalPermissionsGranted());
+        assertTrue(state.deniedPermissions.contains(CONTACTS));
+    }
+
+    @Test
+    public void ungrantedOnlyResultRechecksGrantedPermissions() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)), new LinkedHashSet<String>());
+        state.grantedPermissions.add(CAMERA);
+        FakeHost host = new FakeHost();
+        host.granted.add(CAMERA);
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CONTACTS},
+                new boolean[]{true}, host, true, true);
+        assertEquals(Decision.FINISH, decision);
+        assertTrue(state.allNormalPermissionsGranted());
+        assertEquals(1, host.grantChecks);
+    }
+
+    @Test
+    public void turnedOffWithRationaleIsExplained() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)), new LinkedHashSet<String>());
+        state.grantedPermissions.add(CAMERA);
+        FakeHost host = new FakeHost();
+        host.granted.add(CONTACTS);
+        host.rationale.add(CAMERA);
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CONTACTS},
+                new boolean[]{true}, host, true, true);
+        assertEquals(Decision.EXPLAIN_REASON, decision);
+        assertEquals(Arrays.asList(CAMERA), Arrays.asList(state.deniedPermissions.toArray()));
+        assertTrue(state.permanentDeniedPermissions.isEmpty());
+    }
+
+    @Test
+    public void turnedOffWithoutRationaleIsNotExplained() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)), new LinkedHashSet<String>());
+        state.grantedPermissions.add(CAMERA);
+        FakeHost host = new FakeHost();
+        host.granted.add(CONTACTS);
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CONTACTS},
+                new boolean[]{true}, host, true, true);
+        assertEquals(Decision.FORWARD_TO_SETTINGS, decision);
+        assertTrue(state.deniedPermissions.isEmpty());
+        assertEquals(Arrays.asList(CAMERA), Arrays.asList(state.permanentDeniedPermissions.toArray()));
+
+        state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)), new LinkedHashSet<String>());
+        state.grantedPermissions.add(CAMERA);
+        decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CONTACTS},
+                new boolean[]{true}, host, true, false);
+        assertEquals(Decision.FINISH, decision);
+        assertEquals(Arrays.asList(CAMERA), Arrays.asList(state.permanentDeniedPermissions.toArray()));
+    }
+
+    @Test
+    public void plannerCollapsesGroupsBeforeO() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS, WRITE_CONTACTS)), new LinkedHashSet<String>());
+        Set<String> planned = RequestPlanner.plan(state, state.normalPermissions, new Platform(25, Platform.R), StageGraph.defaults());
+        assertEquals(Arrays.asList(CAMERA, CONTACTS), Arrays.asList(planned.toArray()));
+        assertEquals(Arrays.asList(WRITE_CONTACTS), Arrays.asList(state.collapsedPermissions.toArray()));
+        assertEquals(state.normalPermissions, RequestPlanner.plan(state, state.normalPermissions, new Platform(Platform.O, Platform.O), StageGraph.defaults()));
+
+        RequestPlanner.plan(state, state.normalPermissions, new Platform(25, Platform.R), StageGraph.defaults());
+        FakeHost host = new FakeHost();
+        host.granted.addAll(state.normalPermissions);
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CAMERA, CONTACTS},
+                new boolean[]{true, true}, host, true, true);
+        assertEquals(Decision.FINISH, decision);
+        assertTrue(state.allNormalPermissionsGranted());
+        assertTrue(state.collapsedPermissions.isEmpty());
+    }
+
+    @Test
+    public void resultOnACopyLeavesTheStateUntilApplied() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA, CONTACTS)), new LinkedHashSet<String>());
+        state.deniedPermissions.add(CAMERA);
+        FakeHost host = new FakeHost();
+        host.granted.add(CAMERA);
+        host.rationale.add(CONTACTS);
+        RequestState work = state.copy();
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(work, new String[]{CAMERA, CONTACTS},
+                new boolean[]{true, false}, host, true, true);
+        assertEquals(Decision.EXPLAIN_REASON, decision);
+        assertEquals(Arrays.asList(CAMERA), Arrays.asList(state.deniedPermissions.toArray()));
+        assertTrue(state.grantedPermissions.isEmpty());
+
+        state.copyFrom(work);
+        assertEquals(Arrays.asList(CAMERA), Arrays.asList(state.grantedPermissions.toArray()));
+        assertEquals(Arrays.asList(CONTACTS), Arrays.asList(state.deniedPermissions.toArray()));
+    }
+
+    @Test
+    public void permanentlyDeniedForwardsToSettings() {
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(CAMERA)), new LinkedHashSet<String>());
+        Decision decision = RequestStateMachine.onNormalPermissionsResult(state, new String[]{CAMERA},
+                new boolean[]{false}, new FakeHost(), true, true);
+        assertEquals(Decision.FORWARD_TO_SETTINGS, decision);
+        assertTrue(state.permanentDeniedPermissions.contains(CAMERA));
+    }
+
+    @Test
+    public void manageExternalStorageIsDeniedBelowR() {
+        RequestState state = new RequestState(new LinkedHashSet<String>(),
+                new LinkedHashSet<>(Arrays.asList(Permissions.MANAGE_EXTERNAL_STORAGE)));
+        FakeHost host = new FakeHost();
+        host.granted.add(Permissions.MANAGE_EXTERNAL_STORAGE);
+        RequestResult result = RequestStateMachine.assembleResult(state, new Platform(Platform.Q, Platform.R), host);
+        assertFalse(result.allGranted);
+        assertEquals(Arrays.asList(Permissions.MANAGE_EXTERNAL_STORAGE), result.deniedList);
+    }
+
+    @Test
+    public void otherSpecialPermissionsGetTheirOwnStageAndCheck() {
+        Set<String> otherSpecialPermissions = new HashSet<>(Arrays.asList(INSTALL_PACKAGES));
+        RequestState state = PermissionClassifier.classify(Arrays.asList(CAMERA, INSTALL_PACKAGES),
+                new Platform(Platform.R, Platform.R), otherSpecialPermissions);
+        assertEquals(Arrays.asList(CAMERA), Arrays.asList(state.normalPermissions.toArray()));
+        assertEquals(Arrays.asList(INSTALL_PACKAGES), Arrays.asList(state.specialPermissions.toArray()));
+        // Sets built at compile time don't know about it, it moves over when the request is built.
+        RequestState generated = PermissionClassifier.classified(Arrays.asList(CAMERA, INSTALL_PACKAGES), Arrays.<String>asList(),
+                new Platform(Platform.R, Platform.R), otherSpecialPermissions);
+        assertEquals(state.specialPermissions, generated.specialPermissions);
+
+        state.grantedPermissions.add(CAMERA);
+        FakeHost host = new FakeHost();
+        RequestResult result = RequestStateMachine.assembleResult(state, new Platform(Platform.R, Platform.R), host);
+        assertEquals(Arrays.asList(INSTALL_PACKAGES), result.deniedList);
+        host.granted.add(INSTALL_PACKAGES);
+        result = RequestStateMachine.assembleResult(state, new Platform(Platform.R, Platform.R), host);
+        assertTrue(result.allGranted);
+    }
+
+}
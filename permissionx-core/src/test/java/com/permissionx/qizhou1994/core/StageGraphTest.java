@@ -0,0 +1,103 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the stage order and the prerequisite checks of StageGraph.
+ */
+public class StageGraphTest {
+
+    @Test
+    public void stagesRunAfterTheirPrerequisites() {
+        StageGraph graph = new StageGraph()
+                .addStage(Permissions.ACCESS_BACKGROUND_LOCATION)
+                .addStage(Permissions.SYSTEM_ALERT_WINDOW)
+                .addStage(StageGraph.NORMAL_PERMISSIONS)
+                .require(Permissions.ACCESS_BACKGROUND_LOCATION, Permissions.ACCESS_FINE_LOCATION);
+        assertEquals(Arrays.asList(Permissions.SYSTEM_ALERT_WINDOW, StageGraph.NORMAL_PERMISSIONS, Permissions.ACCESS_BACKGROUND_LOCATION),
+                graph.order());
+        assertEquals(Arrays.asList(StageGraph.NORMAL_PERMISSIONS, Permissions.ACCESS_BACKGROUND_LOCATION, Permissions.SYSTEM_ALERT_WINDOW,
+                Permissions.WRITE_SETTINGS, Permissions.MANAGE_EXTERNAL_STORAGE), StageGraph.defaults().order());
+    }
+
+    @Test
+    public void removedStageLeavesTheOrderAndItsPrerequisites() {
+        StageGraph graph = StageGraph.defaults().removeStage(Permissions.ACCESS_BACKGROUND_LOCATION);
+        assertEquals(Arrays.asList(StageGraph.NORMAL_PERMISSIONS, Permissions.SYSTEM_ALERT_WINDOW, Permissions.WRITE_SETTINGS,
+                Permissions.MANAGE_EXTERNAL_STORAGE), graph.order());
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(Permissions.ACCESS_FINE_LOCATION)),
+                new LinkedHashSet<>(Arrays.asList(Permissions.ACCESS_BACKGROUND_LOCATION)));
+        state.deniedPermissions.add(Permissions.ACCESS_FINE_LOCATION);
+        state.deniedPermissions.add(Permissions.ACCESS_COARSE_LOCATION);
+        assertFalse(graph.isBlocked(Permissions.ACCESS_BACKGROUND_LOCATION, state));
+    }
+
+    @Test
+    public void blockedOnlyWhenEveryPrerequisiteIsDenied() {
+        StageGraph graph = StageGraph.defaults();
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(Permissions.ACCESS_FINE_LOCATION,
+                Permissions.ACCESS_COARSE_LOCATION)), new LinkedHashSet<>(Arrays.asList(Permissions.ACCESS_BACKGROUND_LOCATION)));
+        state.deniedPermissions.add(Permissions.ACCESS_FINE_LOCATION);
+        assertFalse(graph.isBlocked(Permissions.ACCESS_BACKGROUND_LOCATION, state));
+        state.permanentDeniedPermissions.add(Permissions.ACCESS_COARSE_LOCATION);
+        assertTrue(graph.isBlocked(Permissions.ACCESS_BACKGROUND_LOCATION, state));
+        assertFalse(graph.isBlocked(Permissions.SYSTEM_ALERT_WINDOW, state));
+    }
+
+    @Test
+    public void prerequisitesRequestedAgainDontBlock() {
+        Platform platform = new Platform(Platform.Q, Platform.Q);
+        List<String> permissions = Arrays.asList(Permissions.ACCESS_FINE_LOCATION, Permissions.ACCESS_COARSE_LOCATION,
+                Permissions.ACCESS_BACKGROUND_LOCATION);
+        RequestState state = new RequestState(new LinkedHashSet<>(permissions), new LinkedHashSet<String>());
+        // Explaining before the request puts every permission into the denied set first.
+        state.deniedPermissions.addAll(permissions);
+        assertEquals(new LinkedHashSet<>(permissions), RequestPlanner.plan(state, permissions, platform, StageGraph.defaults()));
+        // Requesting again from the rationale dialog, after user denied the foreground location.
+        state.deniedPermissions.clear();
+        state.deniedPermissions.add(Permissions.ACCESS_FINE_LOCATION);
+        state.permanentDeniedPermissions.add(Permissions.ACCESS_COARSE_LOCATION);
+        assertEquals(new LinkedHashSet<>(permissions), RequestPlanner.plan(state, permissions, platform, StageGraph.defaults()));
+    }
+
+    @Test
+    public void deniedPrerequisitesNotRequestedAgainBlock() {
+        Platform platform = new Platform(Platform.Q, Platform.Q);
+        RequestState state = new RequestState(new LinkedHashSet<>(Arrays.asList(Permissions.ACCESS_FINE_LOCATION,
+                Permissions.ACCESS_BACKGROUND_LOCATION)), new LinkedHashSet<String>());
+        state.permanentDeniedPermissions.add(Permissions.ACCESS_FINE_LOCATION);
+        state.deniedPermissions.add(Permissions.ACCESS_COARSE_LOCATION);
+        state.deniedPermissions.add(Permissions.ACCESS_BACKGROUND_LOCATION);
+        assertTrue(RequestPlanner.plan(state, Arrays.asList(Permissions.ACCESS_BACKGROUND_LOCATION), platform,
+                StageGraph.defaults()).isEmpty());
+        assertEquals(new LinkedHashSet<>(Arrays.asList(Permissions.ACCESS_COARSE_LOCATION, Permissions.ACCESS_BACKGROUND_LOCATION)),
+                RequestPlanner.plan(state, Arrays.asList(Permissions.ACCESS_COARSE_LOCATION, Permissions.ACCESS_BACKGROUND_LOCATION),
+                        platform, StageGraph.defaults()));
+    }
+
+}
@@ -19,10 +19,10 @@ package com.permissionx.qizhou1994
 import android.os.Build
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.FragmentActivity
-import com.permissionx.qizhou1994.dialog.allSpecialPermissions
+import com.permissionx.qizhou1994.core.PermissionClassifier
+import com.permissionx.qizhou1994.core.Platform
 import com.permissionx.qizhou1994.request.PermissionBuilder
-import com.permissionx.qizhou1994.request.RequestBackgroundLocationPermission
-import kotlin.collections.LinkedHashSet
+import com.permissionx.qizhou1994.request.SpecialPermissionHandlers
 
 /**
  * An internal class to provide specific scope for passing permissions param.
@@ -51,31 +51,8 @@ class PermissionMediator {
      * @return PermissionBuilder itself.
      */
     fun permissions(permissions: List<String>): PermissionBuilder {
-        val normalPermissionSet = LinkedHashSet<String>()
-        val specialPermissionSet = LinkedHashSet<String>()
-        val osVersion = Build.VERSION.SDK_INT
-        val targetSdkVersion = if (activity != null) {
-            activity!!.applicationInfo.targetSdkVersion
-        } else {
-            fragment!!.context!!.applicationInfo.targetSdkVersion
-        }
-        for (permission in permissions) {
-            if (permission in allSpecialPermissions) {
-                specialPermissionSet.add(permission)
-            } else {
-                normalPermissionSet.add(permission)
-            }
-        }
-        if (RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION in specialPermissionSet) {
-            if (osVersion == Build.VERSION_CODES.Q ||
-                (osVersion == Build.VERSION_CODES.R && targetSdkVersion < Build.VERSION_CODES.R)) {
-                // If we request ACCESS_BACKGROUND_LOCATION on Q or on R but targetSdkVersion below R,
-                // We don't need to request specially, just request as normal permission.
-                specialPermissionSet.remove(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION)
-                normalPermissionSet.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION)
-            }
-        }
-        return PermissionBuilder(activity, fragment, normalPermissionSet, specialPermissionSet)
+        val state = PermissionClassifier.classify(permissions, getPlatform(), SpecialPermissionHandlers.getPermissions())
+        return PermissionBuilder(activity, fragment, state)
     }
 
     /**
@@ -88,4 +65,27 @@ class PermissionMediator {
         return permissions(listOf(*permissions))
     }
 
-}
\ No newline at end of file
+    /**
+     * Permissions that are already split into normal and special ones. Wrappers generated by permissionx-compiler
+     * call this with sets built at compile time, so the permissions are not classified on every call.
+     *
+     * @param normalPermissions Permissions that are requested together.
+     * @param specialPermissions Permissions that need their own request step.
+     * @return PermissionBuilder itself.
+     */
+    fun classifiedPermissions(normalPermissions: Collection<String>, specialPermissions: Collection<String>): PermissionBuilder {
+        val state = PermissionClassifier.classified(normalPermissions, specialPermissions, getPlatform(),
+            SpecialPermissionHandlers.getPermissions())
+        return PermissionBuilder(activity, fragment, state)
+    }
+
+    private fun getPlatform(): Platform {
+        val targetSdkVersion = if (activity != null) {
+            activity!!.applicationInfo.targetSdkVersion
+        } else {
+            fragment!!.context!!.applicationInfo.targetSdkVersion
+        }
+        return Platform(Build.VERSION.SDK_INT, targetSdkVersion)
+    }
+
+}
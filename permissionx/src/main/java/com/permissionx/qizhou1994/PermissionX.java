@@ -17,12 +17,26 @@
 package com.permissionx.qizhou1994;
 
 import android.content.Context;
-import android.content.pm.PackageManager;
 
-import androidx.core.content.ContextCompat;
+import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 
+import com.permissionx.qizhou1994.callback.LastKnownStateCallback;
+import com.permissionx.qizhou1994.checker.DefaultPermissionChecker;
+import com.permissionx.qizhou1994.checker.LastKnownState;
+import com.permissionx.qizhou1994.checker.PermissionChecker;
+import com.permissionx.qizhou1994.checker.PermissionSnapshot;
+import com.permissionx.qizhou1994.checker.SystemCalls;
+import com.permissionx.qizhou1994.log.FlightRecorder;
+import com.permissionx.qizhou1994.log.PermissionXLog;
+import com.permissionx.qizhou1994.log.PermissionXLogger;
+import com.permissionx.qizhou1994.request.SpecialPermissionHandler;
+import com.permissionx.qizhou1994.request.SpecialPermissionHandlers;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+
 /**
  * An open source Android library that makes handling runtime permissions extremely easy.
  *
@@ -40,6 +54,16 @@ import androidx.fragment.app.FragmentActivity;
  */
 public class PermissionX {
 
+    /**
+     * The checker that answers every grant check of PermissionX.
+     */
+    private static volatile PermissionChecker permissionChecker = new DefaultPermissionChecker();
+
+    /**
+     * How long the invisible fragment of PermissionX stays in the host after its last request finished, in milliseconds.
+     */
+    private static volatile long invisibleFragmentIdleTimeout = 0;
+
     /**
      * Init PermissionX to make everything prepare to work.
      *
@@ -65,10 +89,166 @@ public class PermissionX {
      *
      *  @param context Any context, will not be retained.
      *  @param permission Specific permission name to check. e.g. [android.Manifest.permission.CAMERA].
+     *                    Special permissions like SYSTEM_ALERT_WINDOW are checked by their {@link com.permissionx.qizhou1994.request.SpecialPermissionHandler}.
      *  @return True if this permission is granted, False otherwise.
      */
     public static boolean isGranted(Context context, String permission) {
-        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+        return permissionChecker.isGranted(context, permission);
+    }
+
+    /**
+     * Check every runtime and special permission the manifest declares in one batch, instead of calling
+     * {@link #isGranted(Context, String)} for each of them. Share the snapshot, and take a new one when the app comes to
+     * the foreground. {@link PermissionSnapshot#diff(PermissionSnapshot)} tells which permissions changed since the last one.
+     *
+     * @param context Any context, will not be retained.
+     * @return The grant state of every declared runtime and special permission at this moment.
+     */
+    @NonNull
+    public static PermissionSnapshot snapshot(@NonNull Context context) {
+        return PermissionSnapshot.take(context);
+    }
+
+    /**
+     * Answer from the grant state PermissionX saw last time, kept in a small file, without asking the system. Meant for
+     * decisions before the first frame of a cold start. The first call schedules a check with the system for when the
+     * main thread is idle, and the callbacks added by {@link #addLastKnownStateCallback(LastKnownStateCallback)} are
+     * notified if anything changed meanwhile.
+     *
+     * @param context    Any context. Its application context is retained.
+     * @param permission The permission to look up.
+     * @return True if the permission was granted the last time PermissionX checked it, false if it was denied or was
+     *          never checked.
+     */
+    public static boolean lastKnown(@NonNull Context context, @NonNull String permission) {
+        return LastKnownState.get(context, permission);
+    }
+
+    /**
+     * Get notified on the main thread when the state checked with the system differs from what
+     * {@link #lastKnown(Context, String)} answered.
+     *
+     * @param callback The callback to add.
+     */
+    public static void addLastKnownStateCallback(@NonNull LastKnownStateCallback callback) {
+        LastKnownState.addCallback(callback);
+    }
+
+    /**
+     * Remove a callback added by {@link #addLastKnownStateCallback(LastKnownStateCallback)}.
+     *
+     * @param callback The callback to remove.
+     */
+    public static void removeLastKnownStateCallback(@NonNull LastKnownStateCallback callback) {
+        LastKnownState.removeCallback(callback);
+    }
+
+    /**
+     * Replace the checker that answers every grant check of PermissionX, including {@link #isGranted(Context, String)}.
+     *
+     * @param checker The checker to install, or null to restore the default one.
+     */
+    public static void setPermissionChecker(PermissionChecker checker) {
+        permissionChecker = checker != null ? checker : new DefaultPermissionChecker();
+    }
+
+    /**
+     * Get the checker that answers every grant check of PermissionX.
+     *
+     * @return The installed checker, never null.
+     */
+    @NonNull
+    public static PermissionChecker getPermissionChecker() {
+        return permissionChecker;
+    }
+
+    /**
+     * Run the system calls of PermissionX on an executor instead of the main thread. Grant checks, rationale checks,
+     * the special permission checks and the permission group lookups of the default dialog all run there, and their
+     * results are posted back to the main thread. Fragments, dialogs and callbacks still run on the main thread.
+     * <p>
+     * Off by default. The installed {@link PermissionChecker} must be thread safe in this mode.
+     *
+     * @param executor The executor to run system calls on, or null to run them on the main thread again.
+     */
+    public static void setSystemCallExecutor(Executor executor) {
+        SystemCalls.setExecutor(executor);
+    }
+
+    /**
+     * PermissionX keeps the last events of its requests in memory, like the stages, the answers of the system, the
+     * dialogs and the Settings pages, so a request that stalled can be told afterwards. Recording costs a few atomic
+     * writes per event and nothing is formatted until {@link #dump(PrintWriter)}. On by default.
+     *
+     * @param enabled False to stop recording.
+     */
+    public static void setFlightRecorderEnabled(boolean enabled) {
+        FlightRecorder.setEnabled(enabled);
+    }
+
+    /**
+     * Print the recent events of PermissionX requests, oldest first, e.g. from Activity.dump() or into a bug report.
+     *
+     * @param writer Where to print.
+     */
+    public static void dump(@NonNull PrintWriter writer) {
+        FlightRecorder.dump(writer);
+    }
+
+    /**
+     * PermissionX adds an invisible fragment to the host to request permissions. By default it's removed as soon as its
+     * last request finishes, so it doesn't take part in the fragment transactions, state saves and lifecycle dispatch of
+     * the host afterwards, and added again by the next request. Keep it a while longer if the host requests often.
+     *
+     * @param millis How long to keep the fragment after its last request finished, or a negative value to never remove it.
+     */
+    public static void setInvisibleFragmentIdleTimeout(long millis) {
+        invisibleFragmentIdleTimeout = millis;
+    }
+
+    /**
+     * Get how long the invisible fragment of PermissionX stays in the host after its last request finished.
+     *
+     * @return The time in milliseconds, negative if it's never removed.
+     */
+    public static long getInvisibleFragmentIdleTimeout() {
+        return invisibleFragmentIdleTimeout;
+    }
+
+    /**
+     * Request another special permission in a Settings page, like REQUEST_INSTALL_PACKAGES, with the same flow as
+     * SYSTEM_ALERT_WINDOW. Requests that contain the permission run the handler in a stage of their own, and its grant
+     * state is checked by the handler.
+     * <p>
+     * Call it on the main thread before the first request, e.g. in Application.onCreate(), in the same order on every launch.
+     *
+     * @param handler The handler. Replaces the one registered for the same permission before, including the built-in ones.
+     */
+    public static void registerSpecialPermissionHandler(SpecialPermissionHandler handler) {
+        SpecialPermissionHandlers.register(handler);
+    }
+
+    /**
+     * Stop requesting a special permission with the handler registered for it by
+     * {@link #registerSpecialPermissionHandler(SpecialPermissionHandler)}. If PermissionX has a built-in handler for the
+     * permission, that one is used again.
+     * <p>
+     * Call it on the main thread when no request is running.
+     *
+     * @param permission The permission of the handler.
+     * @return True if a handler was removed, false if none was registered for the permission.
+     */
+    public static boolean unregisterSpecialPermissionHandler(String permission) {
+        return SpecialPermissionHandlers.unregister(permission);
+    }
+
+    /**
+     * Install a logger to receive PermissionX internal logs. No logger is installed by default, so PermissionX logs nothing.
+     *
+     * @param logger The logger to install, or null to log nothing.
+     */
+    public static void setLogger(PermissionXLogger logger) {
+        PermissionXLog.setLogger(logger);
     }
 
 }
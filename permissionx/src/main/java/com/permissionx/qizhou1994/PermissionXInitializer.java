@@ -0,0 +1,122 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.startup.Initializer;
+
+import com.permissionx.qizhou1994.checker.LastKnownState;
+import com.permissionx.qizhou1994.checker.PermissionSnapshot;
+import com.permissionx.qizhou1994.dialog.PermissionItems;
+import com.permissionx.qizhou1994.log.PermissionXLog;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads what PermissionX reads from the system on a background thread while the app starts, so the first request and
+ * the first DefaultDialog don't. Register it with App Startup, which the app depends on itself:
+ * <pre>
+ *   &lt;provider
+ *       android:name="androidx.startup.InitializationProvider"
+ *       android:authorities="${applicationId}.androidx-startup"
+ *       android:exported="false"
+ *       tools:node="merge"&gt;
+ *       &lt;meta-data
+ *           android:name="com.permissionx.qizhou1994.PermissionXInitializer"
+ *           android:value="androidx.startup" /&gt;
+ *   &lt;/provider&gt;
+ * </pre>
+ * Everything is loaded by default. To choose, register a subclass that overrides {@link #getCaches()} instead.
+ */
+public class PermissionXInitializer implements Initializer<PermissionXInitializer> {
+
+    /**
+     * The runtime and special permissions the manifest declares, read from PackageManager.
+     */
+    public static final int CACHE_DECLARED_PERMISSIONS = 1;
+
+    /**
+     * The permission groups of the declared permissions, and the labels and icons DefaultDialog shows for them.
+     */
+    public static final int CACHE_PERMISSION_ITEMS = 1 << 1;
+
+    /**
+     * The grant state of the declared permissions. Requests still check with the system, but the system answers from
+     * its own warm cache, and the state is saved for {@link PermissionX#lastKnown(Context, String)}.
+     */
+    public static final int CACHE_GRANT_STATE = 1 << 2;
+
+    /**
+     * All of the above.
+     */
+    public static final int CACHE_ALL = CACHE_DECLARED_PERMISSIONS | CACHE_PERMISSION_ITEMS | CACHE_GRANT_STATE;
+
+    @NonNull
+    @Override
+    public PermissionXInitializer create(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        final int caches = getCaches();
+        if (caches != 0) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    warmUp(appContext, caches);
+                }
+            }, "PermissionX-warm-up");
+            thread.start();
+        }
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public List<Class<? extends Initializer<?>>> dependencies() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Choose what to load. Called on the main thread during app start.
+     *
+     * @return The CACHE constants to load, combined with |. {@link #CACHE_ALL} by default, 0 to load nothing.
+     */
+    protected int getCaches() {
+        return CACHE_ALL;
+    }
+
+    private static void warmUp(Context context, int caches) {
+        long start = SystemClock.uptimeMillis();
+        List<String> permissions = PermissionSnapshot.getDeclaredPermissions(context);
+        if ((caches & CACHE_PERMISSION_ITEMS) != 0) {
+            PermissionItems.INSTANCE.warmUp(context, permissions);
+        }
+        if ((caches & CACHE_GRANT_STATE) != 0) {
+            LastKnownState.warmUp(context);
+        }
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Warmed up " + permissions.size() + " permissions in " + (SystemClock.uptimeMillis() - start) + "ms");
+        }
+    }
+
+}
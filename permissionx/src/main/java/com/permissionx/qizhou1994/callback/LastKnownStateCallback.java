@@ -0,0 +1,37 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.callback;
+
+import com.permissionx.qizhou1994.PermissionX;
+
+import java.util.List;
+
+/**
+ * Callback for {@link PermissionX#addLastKnownStateCallback(LastKnownStateCallback)} method.
+ */
+public interface LastKnownStateCallback {
+
+    /**
+     * Called on the main thread when the grant state checked with the system differs from the last-known state.
+     * {@link PermissionX#lastKnown(android.content.Context, String)} answers with the new state already.
+     * @param changedPermissions
+     *          The permissions whose grant state is different from the last-known state.
+     */
+    void onChanged(List<String> changedPermissions);
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.checker;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.permissionx.qizhou1994.request.SpecialPermissionHandler;
+import com.permissionx.qizhou1994.request.SpecialPermissionHandlers;
+
+/**
+ * The {@link PermissionChecker} PermissionX uses unless another one is installed. Asks the system for every permission:
+ * {@link ContextCompat#checkSelfPermission(Context, String)} for runtime permissions, and the {@link SpecialPermissionHandler}
+ * registered for each special permission.
+ */
+public class DefaultPermissionChecker implements PermissionChecker {
+
+    @Override
+    public boolean isGranted(@NonNull Context context, @NonNull String permission) {
+        SpecialPermissionHandler handler = SpecialPermissionHandlers.get(permission);
+        if (handler != null) {
+            return handler.isGranted(context);
+        }
+        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @NonNull
+    @Override
+    public boolean[] areGranted(@NonNull Context context, @NonNull String[] permissions) {
+        boolean[] results = new boolean[permissions.length];
+        for (int i = 0; i < permissions.length; i++) {
+            results[i] = isGranted(context, permissions[i]);
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.checker;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.permissionx.qizhou1994.callback.LastKnownStateCallback;
+import com.permissionx.qizhou1994.core.GrantStateFile;
+import com.permissionx.qizhou1994.log.PermissionXLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * The grant state PermissionX last saw, kept in a small memory-mapped file, so a cold start can decide on permissions
+ * before the first frame without asking the system. The first read maps the file and schedules a check with the system
+ * for when the main thread is idle. If the state changed, the file is written again and the
+ * {@link LastKnownStateCallback}s and {@link PermissionStateProvider} are notified. The state is checked again whenever
+ * a request finishes.
+ * <p>
+ * The file is read and written by {@link GrantStateFile}. A write replaces the file at once, so {@link #warmUp(Context)}
+ * and the check on the main thread may write it at the same time.
+ */
+public final class LastKnownState {
+
+    private static final String FILE_NAME = "permissionx_last_known";
+
+    private static final List<LastKnownStateCallback> callbacks = new CopyOnWriteArrayList<>();
+
+    /**
+     * The state of each permission, or null until the file is read.
+     */
+    private static volatile Map<String, Boolean> states;
+
+    private static Context appContext;
+
+    /**
+     * Indicates a check with the system is scheduled or running, on the main thread.
+     */
+    private static boolean verifying;
+
+    /**
+     * Indicates the state may have changed again while it was checked, so check it once more after.
+     */
+    private static boolean verifyAgain;
+
+    private LastKnownState() {
+    }
+
+    /**
+     * @param context    Any context. Its application context is retained.
+     * @param permission The permission to look up.
+     * @return True if the permission was granted the last time PermissionX checked it, false if it was denied or was
+     *          never checked.
+     */
+    public static boolean get(@NonNull Context context, @NonNull String permission) {
+        Boolean granted = load(context, true).get(permission);
+        return granted != null && granted;
+    }
+
+    /**
+     * Read the file, if not read yet, and check the state with the system at once on this thread. The changes are
+     * handled on the main thread. Call on a worker thread during app start, so the first {@link #get(Context, String)}
+     * finds the file read and the state checked.
+     *
+     * @param context Any context. Its application context is retained.
+     */
+    public static void warmUp(@NonNull Context context) {
+        load(context, false);
+        final Map<String, Boolean> checked = check(appContext, states);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                onChecked(checked);
+            }
+        });
+    }
+
+    /**
+     * Read the file, if not read yet, and schedule the check with the system.
+     *
+     * @return The last-known state of each permission.
+     */
+    private static Map<String, Boolean> load(Context context, boolean scheduleCheck) {
+        Map<String, Boolean> current = states;
+        if (current == null) {
+            synchronized (LastKnownState.class) {
+                current = states;
+                if (current == null) {
+                    appContext = context.getApplicationContext();
+                    current = read(getFile(appContext));
+                    states = current;
+                    if (scheduleCheck) {
+                        new Handler(Looper.getMainLooper()).post(new Runnable() {
+                            @Override
+                            public void run() {
+                                verifyWhenIdle();
+                            }
+                        });
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Notify the callback when the state checked with the system differs from the last-known state.
+     */
+    public static void addCallback(@NonNull LastKnownStateCallback callback) {
+        callbacks.add(callback);
+    }
+
+    /**
+     * Stop notifying the callback.
+     */
+    public static void removeCallback(@NonNull LastKnownStateCallback callback) {
+        callbacks.remove(callback);
+    }
+
+    /**
+     * Check the state with the system again if it was read in this process. Call on the main thread when the grant
+     * state may have changed.
+     */
+    public static void refreshIfLoaded() {
+        if (states != null) {
+            verify();
+        }
+    }
+
+    private static void verifyWhenIdle() {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                verify();
+                return false;
+            }
+        });
+    }
+
+    private static void verify() {
+        if (verifying) {
+            verifyAgain = true;
+            return;
+        }
+        verifying = true;
+        final Context context;
+        final Map<String, Boolean> lastKnown;
+        synchronized (LastKnownState.class) {
+            context = appContext;
+            lastKnown = states;
+        }
+        SystemCalls.run(new Callable<Map<String, Boolean>>() {
+            @Override
+            public Map<String, Boolean> call() {
+                return check(context, lastKnown);
+            }
+        }, new SystemCalls.Callback<Map<String, Boolean>>() {
+            @Override
+            public void onResult(Map<String, Boolean> checked) {
+                // Apply this result first, so the check asked for meanwhile starts from it and is the last to notify.
+                onChecked(checked);
+                verifying = false;
+                if (verifyAgain) {
+                    verifyAgain = false;
+                    verify();
+                }
+            }
+        });
+    }
+
+    /**
+     * Check the state with the system, and write the file if it's different from the last-known state.
+     *
+     * @return The state of each permission.
+     */
+    private static Map<String, Boolean> check(Context context, Map<String, Boolean> lastKnown) {
+        PermissionSnapshot snapshot = PermissionSnapshot.take(context);
+        Map<String, Boolean> checked = new HashMap<>();
+        for (String permission : snapshot.getPermissions()) {
+            checked.put(permission, snapshot.isGranted(permission));
+        }
+        if (!checked.equals(lastKnown)) {
+            write(getFile(context), checked);
+        }
+        return checked;
+    }
+
+    /**
+     * Answer with the checked state from now on, and notify the callbacks of the permissions that changed. On the main thread.
+     */
+    private static void onChecked(Map<String, Boolean> checked) {
+        Map<String, Boolean> lastKnown = states;
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : checked.entrySet()) {
+            if (!entry.getValue().equals(lastKnown.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        Collections.sort(changed);
+        states = checked;
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Last-known state changed: " + changed);
+        }
+        for (LastKnownStateCallback callback : callbacks) {
+            callback.onChanged(changed);
+        }
+        PermissionStateProvider.refreshIfRunning();
+    }
+
+    private static File getFile(Context context) {
+        return new File(ContextCompat.getNoBackupFilesDir(context), FILE_NAME);
+    }
+
+    private static Map<String, Boolean> read(File file) {
+        try {
+            return GrantStateFile.read(file);
+        } catch (IOException e) {
+            if (PermissionXLog.isLoggable(Log.WARN)) {
+                PermissionXLog.w("Can't read the last-known permission state: " + e);
+            }
+            return new HashMap<>();
+        }
+    }
+
+    private static void write(File file, Map<String, Boolean> checked) {
+        try {
+            GrantStateFile.write(file, checked);
+        } catch (IOException e) {
+            if (PermissionXLog.isLoggable(Log.WARN)) {
+                PermissionXLog.w("Can't write the last-known permission state: " + e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.checker;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Answers whether permissions are granted. Every grant check of PermissionX goes through the installed checker,
+ * including the special permissions, which the default checker asks their {@link com.permissionx.qizhou1994.request.SpecialPermissionHandler} about.
+ * Install one by {@link com.permissionx.qizhou1994.PermissionX#setPermissionChecker(PermissionChecker)}
+ * to add caching, batch the checks in another way, or answer from memory in tests.
+ * <p>
+ * Implementations are called on the main thread, or on the executor installed by
+ * {@link com.permissionx.qizhou1994.PermissionX#setSystemCallExecutor(java.util.concurrent.Executor)}.
+ */
+public interface PermissionChecker {
+
+    /**
+     * Check if a permission is granted.
+     * @param context
+     *          Any context, should not be retained.
+     * @param permission
+     *          Permission to check, a runtime permission or one of the special permissions.
+     * @return True if this permission is granted, false otherwise.
+     */
+    boolean isGranted(@NonNull Context context, @NonNull String permission);
+
+    /**
+     * Check several permissions at once. PermissionX calls this whenever it needs more than one answer at the same time.
+     * @param context
+     *          Any context, should not be retained.
+     * @param permissions
+     *          Permissions to check.
+     * @return An array of the same length as permissions. Element i is true if permissions[i] is granted.
+     */
+    @NonNull
+    boolean[] areGranted(@NonNull Context context, @NonNull String[] permissions);
+
+}
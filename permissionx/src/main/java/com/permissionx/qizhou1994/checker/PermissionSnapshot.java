@@ -0,0 +1,269 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.checker;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.core.GrantBits;
+import com.permissionx.qizhou1994.log.PermissionXLog;
+import com.permissionx.qizhou1994.request.SpecialPermissionHandlers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The grant state of every runtime and special permission the manifest of the app declares, at one moment.
+ * Immutable, so one snapshot can be shared by every part of the app that asks, instead of each checking its own
+ * permissions again. Take a new one when the app comes to the foreground, and {@link #diff(PermissionSnapshot)} it
+ * with the last one to learn what user changed meanwhile.
+ * <p>
+ * The declared permissions are read from the manifest once per process. A snapshot is a bit set over them.
+ */
+public final class PermissionSnapshot {
+
+    /**
+     * The runtime and special permissions declared in the manifest, sorted. Null until the first snapshot.
+     */
+    private static volatile Declared declared;
+
+    private final Declared permissions;
+
+    /**
+     * Bit i is set if permissions.names[i] is granted.
+     */
+    private final BitSet granted;
+
+    private final long uptimeMillis;
+
+    private PermissionSnapshot(Declared permissions, BitSet granted, long uptimeMillis) {
+        this.permissions = permissions;
+        this.granted = granted;
+        this.uptimeMillis = uptimeMillis;
+    }
+
+    /**
+     * Check the grant state of every declared runtime and special permission in one batch through
+     * {@link PermissionX#getPermissionChecker()}. The first call also reads the manifest, so prefer a worker thread.
+     *
+     * @param context Any context, will not be retained.
+     * @return The snapshot.
+     */
+    @NonNull
+    public static PermissionSnapshot take(@NonNull Context context) {
+        return take(context, PermissionX.getPermissionChecker());
+    }
+
+    /**
+     * Take a snapshot with the given checker instead of the installed one.
+     */
+    static PermissionSnapshot take(Context context, PermissionChecker checker) {
+        Declared permissions = getDeclared(context);
+        return of(permissions, checker.areGranted(context, permissions.names), SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Rebuild a snapshot from {@link #getPermissions()}, {@link #toArray()} and {@link #getUptimeMillis()} of a snapshot
+     * taken in another process. The uptime clock is the same in all processes.
+     */
+    static PermissionSnapshot of(String[] sortedPermissions, boolean[] results, long uptimeMillis) {
+        Declared permissions = declared;
+        if (permissions == null || !Arrays.equals(permissions.names, sortedPermissions)) {
+            permissions = new Declared(sortedPermissions);
+        }
+        return of(permissions, results, uptimeMillis);
+    }
+
+    private static PermissionSnapshot of(Declared permissions, boolean[] results, long uptimeMillis) {
+        BitSet granted = new BitSet(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                granted.set(i);
+            }
+        }
+        return new PermissionSnapshot(permissions, granted, uptimeMillis);
+    }
+
+    /**
+     * Get the runtime and special permissions the manifest declares, the ones a snapshot checks. The first call reads
+     * the manifest, so prefer a worker thread.
+     *
+     * @param context Any context, will not be retained.
+     * @return The permissions, sorted.
+     */
+    @NonNull
+    public static List<String> getDeclaredPermissions(@NonNull Context context) {
+        return Collections.unmodifiableList(Arrays.asList(getDeclared(context).names));
+    }
+
+    /**
+     * @param permission A permission declared in the manifest.
+     * @return True if the permission was granted when the snapshot was taken. False if it was denied, or if it's not a
+     *          runtime or special permission declared in the manifest.
+     */
+    public boolean isGranted(String permission) {
+        Integer index = permissions.indexes.get(permission);
+        return index != null && granted.get(index);
+    }
+
+    /**
+     * @return True if the permission is a runtime or special permission declared in the manifest, so the snapshot knows
+     *          its grant state.
+     */
+    public boolean contains(String permission) {
+        return permissions.indexes.containsKey(permission);
+    }
+
+    /**
+     * @return The runtime and special permissions declared in the manifest, sorted.
+     */
+    @NonNull
+    public List<String> getPermissions() {
+        return Collections.unmodifiableList(Arrays.asList(permissions.names));
+    }
+
+    /**
+     * @return The permissions that were granted when the snapshot was taken.
+     */
+    @NonNull
+    public List<String> getGrantedPermissions() {
+        List<String> grantedPermissions = new ArrayList<>(granted.cardinality());
+        for (int i = granted.nextSetBit(0); i >= 0; i = granted.nextSetBit(i + 1)) {
+            grantedPermissions.add(permissions.names[i]);
+        }
+        return grantedPermissions;
+    }
+
+    /**
+     * @return Element i is true if element i of {@link #getPermissions()} is granted.
+     */
+    boolean[] toArray() {
+        boolean[] results = new boolean[permissions.names.length];
+        for (int i = granted.nextSetBit(0); i >= 0; i = granted.nextSetBit(i + 1)) {
+            results[i] = true;
+        }
+        return results;
+    }
+
+    /**
+     * @return When the snapshot was taken, in {@link SystemClock#uptimeMillis()}.
+     */
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+
+    /**
+     * Find the permissions whose grant state is different from an older snapshot.
+     *
+     * @param previous The older snapshot, or null if there's none.
+     * @return The permissions that are granted in one snapshot and not in the other, or all permissions if previous is null.
+     *          A permission only one of the snapshots knows counts as denied in the other.
+     */
+    @NonNull
+    public List<String> diff(@Nullable PermissionSnapshot previous) {
+        if (previous == null) {
+            return getPermissions();
+        }
+        // The tables are the same unless one snapshot is from another process or from before the manifest was read again.
+        return GrantBits.diff(permissions.names, granted, previous.permissions.names, previous.granted);
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionSnapshot{granted=" + getGrantedPermissions() + ", of " + permissions.names.length + "}";
+    }
+
+    private static Declared getDeclared(Context context) {
+        Declared permissions = declared;
+        if (permissions == null) {
+            permissions = readDeclared(context);
+            declared = permissions;
+        }
+        return permissions;
+    }
+
+    /**
+     * Read the permissions declared in the manifest, and keep the dangerous ones and the ones with a special permission handler.
+     */
+    private static Declared readDeclared(Context context) {
+        PackageManager packageManager = context.getPackageManager();
+        String[] requestedPermissions = null;
+        try {
+            PackageInfo packageInfo = packageManager.getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+            requestedPermissions = packageInfo.requestedPermissions;
+        } catch (PackageManager.NameNotFoundException e) {
+            if (PermissionXLog.isLoggable(Log.WARN)) {
+                PermissionXLog.w("Can't read the permissions of " + context.getPackageName() + ": " + e);
+            }
+        }
+        List<String> names = new ArrayList<>();
+        if (requestedPermissions != null) {
+            for (String permission : requestedPermissions) {
+                if (SpecialPermissionHandlers.get(permission) != null || isDangerous(packageManager, permission)) {
+                    names.add(permission);
+                }
+            }
+        }
+        Collections.sort(names);
+        return new Declared(names.toArray(new String[0]));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean isDangerous(PackageManager packageManager, String permission) {
+        try {
+            PermissionInfo permissionInfo = packageManager.getPermissionInfo(permission, 0);
+            return (permissionInfo.protectionLevel & PermissionInfo.PROTECTION_MASK_BASE) == PermissionInfo.PROTECTION_DANGEROUS;
+        } catch (PackageManager.NameNotFoundException e) {
+            // Not defined on this device.
+            return false;
+        }
+    }
+
+    /**
+     * The declared permissions and the index of each, shared by all snapshots of the process.
+     */
+    private static final class Declared {
+
+        final String[] names;
+
+        final Map<String, Integer> indexes;
+
+        Declared(String[] names) {
+            this.names = names;
+            indexes = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                indexes.put(names[i], i);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.checker;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.log.PermissionXLog;
+
+/**
+ * Shares the grant state the main process knows with the other processes of the app, so they don't ask the system
+ * for it again. Read through {@link SharedStatePermissionChecker}.
+ * <p>
+ * The main process takes a {@link PermissionSnapshot} the first time a reader asks, when a request finishes, when
+ * {@link LastKnownState} finds the grant state changed, and when an activity resumes, since user may have changed
+ * permissions in Settings meanwhile. Snapshots are always taken on a background thread. Each snapshot that differs from
+ * the last one gets a new sequence number, and the readers are notified to fetch it again.
+ * <p>
+ * Declared by PermissionX with android:enabled="@bool/permissionx_shared_state", which is false. Set that resource to
+ * true in the app to turn it on.
+ */
+public class PermissionStateProvider extends ContentProvider {
+
+    /**
+     * Method of {@link #call(String, String, Bundle)} to get the state. The arg is the sequence number the caller has,
+     * or null.
+     */
+    static final String METHOD_GET = "get";
+
+    /**
+     * Sequence number of the state, a long in the reply.
+     */
+    static final String KEY_SEQUENCE = "sequence";
+
+    /**
+     * The permissions of the state, a sorted String[] in the reply. Left out if the caller has this sequence number already.
+     */
+    static final String KEY_PERMISSIONS = "permissions";
+
+    /**
+     * The grant state of each permission, a boolean[] in the reply. Left out with {@link #KEY_PERMISSIONS}.
+     */
+    static final String KEY_GRANTED = "granted";
+
+    /**
+     * When the state was taken, a long in the reply. Left out with {@link #KEY_PERMISSIONS}.
+     */
+    static final String KEY_UPTIME = "uptime";
+
+    /**
+     * The provider of this process, if it runs in this process.
+     */
+    private static volatile PermissionStateProvider instance;
+
+    private volatile PermissionSnapshot snapshot;
+
+    private volatile long sequence;
+
+    /**
+     * Runs {@link #refreshTask}, one at a time. Null until the first refresh.
+     */
+    private Handler worker;
+
+    private final Runnable refreshTask = new Runnable() {
+        @Override
+        public void run() {
+            publish(takeSnapshot(getContext()));
+        }
+    };
+
+    /**
+     * @return The uri of the provider of the app.
+     */
+    static Uri getUri(Context context) {
+        return Uri.parse("content://" + context.getPackageName() + ".permissionx.state");
+    }
+
+    /**
+     * Take a new snapshot on a background thread if the provider runs in this process. Call when a request finishes or
+     * the grant state changed. Activity resumes are observed by the provider itself.
+     */
+    public static void refreshIfRunning() {
+        PermissionStateProvider provider = instance;
+        if (provider != null) {
+            provider.refresh();
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        instance = this;
+        Context context = getContext();
+        if (context != null && context.getApplicationContext() instanceof Application) {
+            ((Application) context.getApplicationContext()).registerActivityLifecycleCallbacks(new ActivityResumeCallbacks() {
+                @Override
+                public void onActivityResumed(@NonNull Activity activity) {
+                    // User may have changed permissions in Settings meanwhile. The snapshot is taken on the worker.
+                    refresh();
+                }
+            });
+        }
+        return true;
+    }
+
+    private void refresh() {
+        Handler handler = getWorker();
+        // A refresh that hasn't started yet will see this change too.
+        handler.removeCallbacks(refreshTask);
+        handler.post(refreshTask);
+    }
+
+    private synchronized Handler getWorker() {
+        if (worker == null) {
+            HandlerThread thread = new HandlerThread("PermissionX-shared-state", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            worker = new Handler(thread.getLooper());
+        }
+        return worker;
+    }
+
+    /**
+     * Keep the snapshot, and notify the readers if anything changed.
+     */
+    private void publish(PermissionSnapshot newSnapshot) {
+        boolean changed;
+        synchronized (this) {
+            PermissionSnapshot current = snapshot;
+            if (current != null && newSnapshot.getUptimeMillis() < current.getUptimeMillis()) {
+                return;
+            }
+            changed = current == null || !newSnapshot.diff(current).isEmpty();
+            if (changed) {
+                sequence++;
+            }
+            snapshot = newSnapshot;
+        }
+        if (changed) {
+            if (PermissionXLog.isLoggable(Log.DEBUG)) {
+                PermissionXLog.d("Shared permission state " + sequence + ": " + newSnapshot);
+            }
+            getContext().getContentResolver().notifyChange(getUri(getContext()), null, false);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if (!METHOD_GET.equals(method)) {
+            return null;
+        }
+        PermissionSnapshot current = snapshot;
+        if (current == null) {
+            // Asked before any snapshot was taken in this process. This runs on a binder thread.
+            publish(takeSnapshot(getContext()));
+        }
+        Bundle reply = new Bundle();
+        long currentSequence;
+        synchronized (this) {
+            current = snapshot;
+            currentSequence = sequence;
+        }
+        reply.putLong(KEY_SEQUENCE, currentSequence);
+        if (arg == null || !arg.equals(String.valueOf(currentSequence))) {
+            reply.putStringArray(KEY_PERMISSIONS, current.getPermissions().toArray(new String[0]));
+            reply.putBooleanArray(KEY_GRANTED, current.toArray());
+            reply.putLong(KEY_UPTIME, current.getUptimeMillis());
+        }
+        return reply;
+    }
+
+    /**
+     * Take a snapshot with the installed checker. If that's a {@link SharedStatePermissionChecker}, which reads from
+     * this provider, take it with the checker that one falls back to instead.
+     */
+    private static PermissionSnapshot takeSnapshot(Context context) {
+        PermissionChecker checker = PermissionX.getPermissionChecker();
+        if (checker instanceof SharedStatePermissionChecker) {
+            checker = ((SharedStatePermissionChecker) checker).fallback;
+        }
+        return PermissionSnapshot.take(context, checker);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    /**
+     * ActivityLifecycleCallbacks that only care about resumes.
+     */
+    private abstract static class ActivityResumeCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) {
+        }
+
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.checker;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.permissionx.qizhou1994.log.PermissionXLog;
+
+/**
+ * A {@link PermissionChecker} for the secondary processes of an app, which answers from the grant state the main process
+ * shares through {@link PermissionStateProvider}. The state is fetched once, and again only after the main process
+ * notifies a new sequence number. Permissions the state doesn't know, and every check while the provider can't be
+ * reached, go to the fallback checker.
+ * <p>
+ * It watches the provider until {@link #release()} is called. Release it when it's replaced, so the observer doesn't keep
+ * it alive.
+ */
+public class SharedStatePermissionChecker implements PermissionChecker {
+
+    /**
+     * How long to use the fallback checker alone after the provider couldn't be reached, before trying it again.
+     */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    final PermissionChecker fallback;
+
+    private final Context context;
+
+    private final Uri uri;
+
+    /**
+     * Marks the state stale when the main process notifies a change.
+     */
+    private final ContentObserver observer = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            stale = true;
+        }
+    };
+
+    /**
+     * Indicates {@link #release()} is called. Every check goes to the fallback checker after that.
+     */
+    private volatile boolean released;
+
+    private volatile PermissionSnapshot snapshot;
+
+    /**
+     * Sequence number of {@link #snapshot}, or -1 if there's none.
+     */
+    private volatile long sequence = -1;
+
+    /**
+     * Indicates the main process notified a change since the state was fetched.
+     */
+    private volatile boolean stale = true;
+
+    /**
+     * When to try the provider again after it couldn't be reached, in {@link SystemClock#uptimeMillis()}.
+     */
+    private volatile long retryAt;
+
+    /**
+     * @param context  Any context of the process. Its application context is retained.
+     * @param fallback The checker to ask when the shared state can't answer, usually {@link DefaultPermissionChecker}.
+     */
+    public SharedStatePermissionChecker(@NonNull Context context, @NonNull PermissionChecker fallback) {
+        this.context = context.getApplicationContext();
+        this.fallback = fallback;
+        uri = PermissionStateProvider.getUri(this.context);
+        this.context.getContentResolver().registerContentObserver(uri, false, observer);
+    }
+
+    /**
+     * Stop watching the shared state. Checks go to the fallback checker from now on. Calling it again does nothing.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        context.getContentResolver().unregisterContentObserver(observer);
+        snapshot = null;
+        sequence = -1;
+    }
+
+    @Override
+    public boolean isGranted(@NonNull Context context, @NonNull String permission) {
+        PermissionSnapshot current = getSnapshot();
+        if (current != null && current.contains(permission)) {
+            return current.isGranted(permission);
+        }
+        return fallback.isGranted(context, permission);
+    }
+
+    @NonNull
+    @Override
+    public boolean[] areGranted(@NonNull Context context, @NonNull String[] permissions) {
+        PermissionSnapshot current = getSnapshot();
+        if (current == null) {
+            return fallback.areGranted(context, permissions);
+        }
+        boolean[] results = new boolean[permissions.length];
+        for (int i = 0; i < permissions.length; i++) {
+            results[i] = current.contains(permissions[i]) ? current.isGranted(permissions[i]) : fallback.isGranted(context, permissions[i]);
+        }
+        return results;
+    }
+
+    /**
+     * @return Sequence number of the shared state last fetched, or -1 if none is fetched yet. A new number means the
+     *          grant state changed.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the shared state, fetched again from the main process if it changed.
+     *
+     * @return The state of the main process, or null if it can't be reached or this checker is released.
+     */
+    @Nullable
+    public PermissionSnapshot getSnapshot() {
+        if (released) {
+            return null;
+        }
+        if (stale && SystemClock.uptimeMillis() >= retryAt) {
+            fetch();
+        }
+        return snapshot;
+    }
+
+    private synchronized void fetch() {
+        if (!stale || released) {
+            return;
+        }
+        // Clear it first, so a change notified while fetching makes the next check fetch again.
+        stale = false;
+        Bundle reply;
+        try {
+            reply = context.getContentResolver().call(uri, PermissionStateProvider.METHOD_GET,
+                    sequence >= 0 ? String.valueOf(sequence) : null, null);
+        } catch (RuntimeException e) {
+            // The provider isn't enabled, or the main process died during the call.
+            reply = null;
+            if (PermissionXLog.isLoggable(Log.WARN)) {
+                PermissionXLog.w("Can't read the shared permission state: " + e);
+            }
+        }
+        if (reply == null) {
+            stale = true;
+            snapshot = null;
+            sequence = -1;
+            retryAt = SystemClock.uptimeMillis() + RETRY_DELAY_MILLIS;
+            return;
+        }
+        String[] permissions = reply.getStringArray(PermissionStateProvider.KEY_PERMISSIONS);
+        boolean[] granted = reply.getBooleanArray(PermissionStateProvider.KEY_GRANTED);
+        if (permissions != null && granted != null && permissions.length == granted.length) {
+            snapshot = PermissionSnapshot.of(permissions, granted, reply.getLong(PermissionStateProvider.KEY_UPTIME));
+        }
+        sequence = reply.getLong(PermissionStateProvider.KEY_SEQUENCE);
+    }
+
+}
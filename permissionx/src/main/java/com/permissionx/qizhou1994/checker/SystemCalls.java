@@ -0,0 +1,128 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.checker;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Runs the PermissionManager and PackageManager work of PermissionX. By default the work runs at once on the calling thread.
+ * Once an executor is installed by {@link com.permissionx.qizhou1994.PermissionX#setSystemCallExecutor(Executor)},
+ * the work runs on that executor and the result is posted back to the main thread, so the main thread only runs
+ * fragment, dialog and callback work.
+ */
+public final class SystemCalls {
+
+    /**
+     * Receives the result of the work on the main thread.
+     */
+    public interface Callback<T> {
+
+        /**
+         * @param result
+         *          What the work returned.
+         */
+        void onResult(T result);
+
+    }
+
+    private static volatile Executor executor;
+
+    private static Handler mainHandler;
+
+    private SystemCalls() {
+    }
+
+    /**
+     * Install the executor to run the work on, or null to run the work at once on the calling thread.
+     */
+    public static void setExecutor(Executor systemCallExecutor) {
+        executor = systemCallExecutor;
+    }
+
+    /**
+     * @return True if the work runs on an executor instead of the main thread.
+     */
+    public static boolean isOffMainThread() {
+        return executor != null;
+    }
+
+    /**
+     * Run the work, and hand the result to the callback on the main thread.
+     * Without an executor, both run at once before this method returns.
+     * @param work
+     *          The system calls to make. Must not touch views or fragments.
+     * @param callback
+     *          Continues with the result. Always called on the main thread.
+     */
+    public static <T> void run(@NonNull final Callable<T> work, @NonNull final Callback<T> callback) {
+        Executor currentExecutor = executor;
+        if (currentExecutor == null) {
+            callback.onResult(call(work));
+            return;
+        }
+        final Handler handler = getMainHandler();
+        currentExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final T result = call(work);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(result);
+                        }
+                    });
+                } catch (final RuntimeException e) {
+                    // Crash on the main thread, same as when the work runs there.
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            throw e;
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private static <T> T call(Callable<T> work) {
+        try {
+            return work.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+}
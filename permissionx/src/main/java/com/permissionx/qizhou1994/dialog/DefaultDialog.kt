@@ -16,17 +16,17 @@
 
 package com.permissionx.qizhou1994.dialog
 
-import android.Manifest
 import android.content.Context
 import android.content.res.Configuration
 import android.graphics.PorterDuff
-import android.os.Build
 import android.os.Bundle
 import android.view.Gravity
 import android.view.View
 import com.permissionx.qizhou1994.R
+import com.permissionx.qizhou1994.checker.SystemCalls
 import com.permissionx.qizhou1994.databinding.PermissionxDefaultDialogLayoutBinding
 import com.permissionx.qizhou1994.databinding.PermissionxPermissionItemBinding
+import java.util.concurrent.Callable
 
 /**
  * Default rationale dialog to show if developers did not implement their own custom rationale dialog.
@@ -111,55 +111,31 @@ class DefaultDialog(context: Context,
      * But we only need to add the permission group. So if there're two permissions belong to one group, only one item will be added to the dialog.
      */
     private fun buildPermissionsLayout() {
-        val tempSet = HashSet<String>()
-        val currentVersion = Build.VERSION.SDK_INT
-        for (permission in permissions) {
-            val permissionGroup = when(currentVersion) {
-                Build.VERSION_CODES.Q -> permissionMapOnQ[permission]
-                Build.VERSION_CODES.R -> permissionMapOnR[permission]
-                else -> {
-                    val permissionInfo = context.packageManager.getPermissionInfo(permission, 0)
-                    permissionInfo.group
-                }
-            }
-            if ((permission in allSpecialPermissions && !tempSet.contains(permission))
-                || (permissionGroup != null && !tempSet.contains(permissionGroup))) {
-                val itemBinding = PermissionxPermissionItemBinding.inflate(layoutInflater, binding.permissionsLayout, false)
-                itemBinding.root.visibility=View.GONE
-                when(permission) {
-                    Manifest.permission.ACCESS_BACKGROUND_LOCATION -> {
-                        itemBinding.permissionText.text = context.getString(R.string.permissionx_access_background_location)
-                        itemBinding.permissionIcon.setImageResource(R.drawable.permissionx_ic_location)
-                    }
-                    Manifest.permission.SYSTEM_ALERT_WINDOW -> {
-                        itemBinding.permissionText.text = context.getString(R.string.permissionx_system_alert_window)
-                        itemBinding.permissionIcon.setImageResource(R.drawable.permissionx_ic_alert)
-                    }
-                    Manifest.permission.WRITE_SETTINGS -> {
-                        itemBinding.permissionText.text = context.getString(R.string.permissionx_write_settings)
-                        itemBinding.permissionIcon.setImageResource(R.drawable.permissionx_ic_setting)
-                    }
-                    Manifest.permission.MANAGE_EXTERNAL_STORAGE -> {
-                        itemBinding.permissionText.text = context.getString(R.string.permissionx_manage_external_storage)
-                        itemBinding.permissionIcon.setImageResource(R.drawable.permissionx_ic_storage)
-                    }
-                    else -> {
-                        itemBinding.permissionText.text = context.getString(context.packageManager.getPermissionGroupInfo(permissionGroup!!, 0).labelRes)
-                        itemBinding.permissionIcon.setImageResource(context.packageManager.getPermissionGroupInfo(permissionGroup, 0).icon)
-                    }
+        // Group, label and icon lookups are PackageManager calls, so they go through SystemCalls.
+        SystemCalls.run(Callable {
+            PermissionItems.of(context, permissions)
+        }, SystemCalls.Callback { items -> addPermissionItems(items) })
+    }
+
+    /**
+     * Inflate an item for each permission group into the dialog.
+     */
+    private fun addPermissionItems(items: List<PermissionItem>) {
+        for (item in items) {
+            val itemBinding = PermissionxPermissionItemBinding.inflate(layoutInflater, binding.permissionsLayout, false)
+            itemBinding.root.visibility=View.GONE
+            itemBinding.permissionText.text = context.getString(item.labelRes)
+            itemBinding.permissionIcon.setImageResource(item.iconRes)
+            if (isDarkTheme()) {
+                if (darkColor != -1) {
+                    itemBinding.permissionIcon.setColorFilter(darkColor, PorterDuff.Mode.SRC_ATOP)
                 }
-                if (isDarkTheme()) {
-                    if (darkColor != -1) {
-                        itemBinding.permissionIcon.setColorFilter(darkColor, PorterDuff.Mode.SRC_ATOP)
-                    }
-                } else {
-                    if (lightColor != -1) {
-                        itemBinding.permissionIcon.setColorFilter(lightColor, PorterDuff.Mode.SRC_ATOP)
-                    }
+            } else {
+                if (lightColor != -1) {
+                    itemBinding.permissionIcon.setColorFilter(lightColor, PorterDuff.Mode.SRC_ATOP)
                 }
-                binding.permissionsLayout.addView(itemBinding.root)
-                tempSet.add(permissionGroup ?: permission)
             }
+            binding.permissionsLayout.addView(itemBinding.root)
         }
     }
 
@@ -196,4 +172,5 @@ class DefaultDialog(context: Context,
         return flag == Configuration.UI_MODE_NIGHT_YES
     }
 
-}
\ No newline at end of file
+}
+
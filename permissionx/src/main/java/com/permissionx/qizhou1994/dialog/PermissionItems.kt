@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.dialog
+
+import android.Manifest
+import android.content.Context
+import android.content.pm.PackageManager
+import android.os.Build
+import androidx.core.content.ContextCompat
+import com.permissionx.qizhou1994.R
+import com.permissionx.qizhou1994.core.PermissionGroups
+import com.permissionx.qizhou1994.core.Permissions
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Label and icon of an item on the dialog.
+ */
+internal class PermissionItem(val labelRes: Int, val iconRes: Int)
+
+/**
+ * Resolves the items [DefaultDialog] shows for its permissions. The permission groups and the labels and icons of the
+ * groups are PackageManager calls, so they are kept for the life of the process, and can be loaded ahead by [warmUp].
+ */
+internal object PermissionItems {
+
+    /**
+     * Stands for a permission without group in [groups], which can't hold null.
+     */
+    private const val NO_GROUP = ""
+
+    private val groups = ConcurrentHashMap<String, String>()
+
+    /**
+     * Item of each group, or of each special permission.
+     */
+    private val items = ConcurrentHashMap<String, PermissionItem>()
+
+    /**
+     * Get the items to show for the permissions, one for each permission group. Makes PackageManager calls for the
+     * groups not loaded yet, so call through SystemCalls.
+     */
+    fun of(context: Context, permissions: List<String>): List<PermissionItem> {
+        val packageManager = context.packageManager
+        val groupItems = PermissionGroups.pickGroupItems(permissions) { permission -> groupOf(packageManager, permission) }
+        return groupItems.map { (permission, permissionGroup) -> itemOf(packageManager, permission, permissionGroup) }
+    }
+
+    /**
+     * Load the groups, labels and icons of the permissions, so the first dialog that shows them doesn't.
+     * Permissions the system doesn't know are skipped.
+     */
+    fun warmUp(context: Context, permissions: List<String>) {
+        val packageManager = context.packageManager
+        for (permission in permissions) {
+            try {
+                val item = itemOf(packageManager, permission, groupOf(packageManager, permission))
+                // Resources keeps the drawable it loaded, so the dialog only creates a copy of it.
+                ContextCompat.getDrawable(context, item.iconRes)
+            } catch (e: Exception) {
+                // Not defined on this device, or has no group to show.
+            }
+        }
+    }
+
+    private fun groupOf(packageManager: PackageManager, permission: String): String? {
+        val group = groups[permission] ?: when (Build.VERSION.SDK_INT) {
+            Build.VERSION_CODES.Q, Build.VERSION_CODES.R -> Permissions.groupOnQ(permission)
+            else -> packageManager.getPermissionInfo(permission, 0).group
+        } ?: NO_GROUP
+        groups[permission] = group
+        return if (group == NO_GROUP) null else group
+    }
+
+    private fun itemOf(packageManager: PackageManager, permission: String, permissionGroup: String?): PermissionItem {
+        val key = if (Permissions.isSpecial(permission)) permission else permissionGroup!!
+        return items[key] ?: when (permission) {
+            Manifest.permission.ACCESS_BACKGROUND_LOCATION ->
+                PermissionItem(R.string.permissionx_access_background_location, R.drawable.permissionx_ic_location)
+            Manifest.permission.SYSTEM_ALERT_WINDOW ->
+                PermissionItem(R.string.permissionx_system_alert_window, R.drawable.permissionx_ic_alert)
+            Manifest.permission.WRITE_SETTINGS ->
+                PermissionItem(R.string.permissionx_write_settings, R.drawable.permissionx_ic_setting)
+            Manifest.permission.MANAGE_EXTERNAL_STORAGE ->
+                PermissionItem(R.string.permissionx_manage_external_storage, R.drawable.permissionx_ic_storage)
+            else -> {
+                val permissionGroupInfo = packageManager.getPermissionGroupInfo(permissionGroup!!, 0)
+                PermissionItem(permissionGroupInfo.labelRes, permissionGroupInfo.icon)
+            }
+        }.also { items[key] = it }
+    }
+
+}
@@ -22,57 +22,65 @@ import android.os.Build
 
 /**
  * Maintains all the special permissions that we need to handle by special case.
+ * PermissionX itself checks [com.permissionx.qizhou1994.core.Permissions.isSpecial], which needs no initialization,
+ * so this set is only built when it is read.
  */
-@TargetApi(Build.VERSION_CODES.R)
-val allSpecialPermissions = setOf(
-    Manifest.permission.ACCESS_BACKGROUND_LOCATION,
-    Manifest.permission.SYSTEM_ALERT_WINDOW,
-    Manifest.permission.WRITE_SETTINGS,
-    Manifest.permission.MANAGE_EXTERNAL_STORAGE
-)
+@get:TargetApi(Build.VERSION_CODES.R)
+val allSpecialPermissions by lazy(LazyThreadSafetyMode.PUBLICATION) {
+    setOf(
+        Manifest.permission.ACCESS_BACKGROUND_LOCATION,
+        Manifest.permission.SYSTEM_ALERT_WINDOW,
+        Manifest.permission.WRITE_SETTINGS,
+        Manifest.permission.MANAGE_EXTERNAL_STORAGE
+    )
+}
 
 /**
  * Based on this link https://developer.android.com/about/versions/10/privacy/changes#permission-groups-removed
  * Since Android Q, we can not get the permission group name by permission name anymore.
  * So we need to keep a track of relationship between permissions and permission groups on every
  * Android release since Android Q.
+ * PermissionX itself resolves groups by [com.permissionx.qizhou1994.core.Permissions.groupOnQ], which needs no
+ * initialization, so this map is only built when it is read.
  */
-@TargetApi(Build.VERSION_CODES.Q)
-val permissionMapOnQ = mapOf(
-    Manifest.permission.READ_CALENDAR to Manifest.permission_group.CALENDAR,
-    Manifest.permission.WRITE_CALENDAR to Manifest.permission_group.CALENDAR,
-    Manifest.permission.READ_CALL_LOG to Manifest.permission_group.CALL_LOG,
-    Manifest.permission.WRITE_CALL_LOG to Manifest.permission_group.CALL_LOG,
-    "android.permission.PROCESS_OUTGOING_CALLS" to Manifest.permission_group.CALL_LOG,
-    Manifest.permission.CAMERA to Manifest.permission_group.CAMERA,
-    Manifest.permission.READ_CONTACTS to Manifest.permission_group.CONTACTS,
-    Manifest.permission.WRITE_CONTACTS to Manifest.permission_group.CONTACTS,
-    Manifest.permission.GET_ACCOUNTS to Manifest.permission_group.CONTACTS,
-    Manifest.permission.ACCESS_FINE_LOCATION to Manifest.permission_group.LOCATION,
-    Manifest.permission.ACCESS_COARSE_LOCATION to Manifest.permission_group.LOCATION,
-    Manifest.permission.ACCESS_BACKGROUND_LOCATION to Manifest.permission_group.LOCATION,
-    Manifest.permission.RECORD_AUDIO to Manifest.permission_group.MICROPHONE,
-    Manifest.permission.READ_PHONE_STATE to Manifest.permission_group.PHONE,
-    Manifest.permission.READ_PHONE_NUMBERS to Manifest.permission_group.PHONE,
-    Manifest.permission.CALL_PHONE to Manifest.permission_group.PHONE,
-    Manifest.permission.ANSWER_PHONE_CALLS to Manifest.permission_group.PHONE,
-    Manifest.permission.ADD_VOICEMAIL to Manifest.permission_group.PHONE,
-    Manifest.permission.USE_SIP to Manifest.permission_group.PHONE,
-    Manifest.permission.ACCEPT_HANDOVER to Manifest.permission_group.PHONE,
-    Manifest.permission.BODY_SENSORS to Manifest.permission_group.SENSORS,
-    Manifest.permission.ACTIVITY_RECOGNITION to Manifest.permission_group.ACTIVITY_RECOGNITION,
-    Manifest.permission.SEND_SMS to Manifest.permission_group.SMS,
-    Manifest.permission.RECEIVE_SMS to Manifest.permission_group.SMS,
-    Manifest.permission.READ_SMS to Manifest.permission_group.SMS,
-    Manifest.permission.RECEIVE_WAP_PUSH to Manifest.permission_group.SMS,
-    Manifest.permission.RECEIVE_MMS to Manifest.permission_group.SMS,
-    Manifest.permission.READ_EXTERNAL_STORAGE to Manifest.permission_group.STORAGE,
-    Manifest.permission.WRITE_EXTERNAL_STORAGE to Manifest.permission_group.STORAGE,
-    Manifest.permission.ACCESS_MEDIA_LOCATION to Manifest.permission_group.STORAGE
-)
+@get:TargetApi(Build.VERSION_CODES.Q)
+val permissionMapOnQ by lazy(LazyThreadSafetyMode.PUBLICATION) {
+    mapOf(
+        Manifest.permission.READ_CALENDAR to Manifest.permission_group.CALENDAR,
+        Manifest.permission.WRITE_CALENDAR to Manifest.permission_group.CALENDAR,
+        Manifest.permission.READ_CALL_LOG to Manifest.permission_group.CALL_LOG,
+        Manifest.permission.WRITE_CALL_LOG to Manifest.permission_group.CALL_LOG,
+        "android.permission.PROCESS_OUTGOING_CALLS" to Manifest.permission_group.CALL_LOG,
+        Manifest.permission.CAMERA to Manifest.permission_group.CAMERA,
+        Manifest.permission.READ_CONTACTS to Manifest.permission_group.CONTACTS,
+        Manifest.permission.WRITE_CONTACTS to Manifest.permission_group.CONTACTS,
+        Manifest.permission.GET_ACCOUNTS to Manifest.permission_group.CONTACTS,
+        Manifest.permission.ACCESS_FINE_LOCATION to Manifest.permission_group.LOCATION,
+        Manifest.permission.ACCESS_COARSE_LOCATION to Manifest.permission_group.LOCATION,
+        Manifest.permission.ACCESS_BACKGROUND_LOCATION to Manifest.permission_group.LOCATION,
+        Manifest.permission.RECORD_AUDIO to Manifest.permission_group.MICROPHONE,
+        Manifest.permission.READ_PHONE_STATE to Manifest.permission_group.PHONE,
+        Manifest.permission.READ_PHONE_NUMBERS to Manifest.permission_group.PHONE,
+        Manifest.permission.CALL_PHONE to Manifest.permission_group.PHONE,
+        Manifest.permission.ANSWER_PHONE_CALLS to Manifest.permission_group.PHONE,
+        Manifest.permission.ADD_VOICEMAIL to Manifest.permission_group.PHONE,
+        Manifest.permission.USE_SIP to Manifest.permission_group.PHONE,
+        Manifest.permission.ACCEPT_HANDOVER to Manifest.permission_group.PHONE,
+        Manifest.permission.BODY_SENSORS to Manifest.permission_group.SENSORS,
+        Manifest.permission.ACTIVITY_RECOGNITION to Manifest.permission_group.ACTIVITY_RECOGNITION,
+        Manifest.permission.SEND_SMS to Manifest.permission_group.SMS,
+        Manifest.permission.RECEIVE_SMS to Manifest.permission_group.SMS,
+        Manifest.permission.READ_SMS to Manifest.permission_group.SMS,
+        Manifest.permission.RECEIVE_WAP_PUSH to Manifest.permission_group.SMS,
+        Manifest.permission.RECEIVE_MMS to Manifest.permission_group.SMS,
+        Manifest.permission.READ_EXTERNAL_STORAGE to Manifest.permission_group.STORAGE,
+        Manifest.permission.WRITE_EXTERNAL_STORAGE to Manifest.permission_group.STORAGE,
+        Manifest.permission.ACCESS_MEDIA_LOCATION to Manifest.permission_group.STORAGE
+    )
+}
 
 /**
  * Thankfully Android R has no permission added or removed than Android Q.
  */
-@TargetApi(Build.VERSION_CODES.R)
-val permissionMapOnR = permissionMapOnQ
\ No newline at end of file
+@get:TargetApi(Build.VERSION_CODES.R)
+val permissionMapOnR by lazy(LazyThreadSafetyMode.PUBLICATION) { permissionMapOnQ }
\ No newline at end of file
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.log;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Keeps the last {@link #CAPACITY} events of the permission flows in a ring buffer, so a flow that stalled in the field
+ * can be told afterwards through {@link com.permissionx.qizhou1994.PermissionX#dump(PrintWriter)}, without logging.
+ * <p>
+ * Recording an event takes a slot with one atomic increment and writes a few fields into it, without locks and
+ * without allocating. Nothing is formatted until the dump. A slot is written between two stores of its sequence
+ * number, and the dump skips a slot whose sequence number changed while it was read.
+ */
+public final class FlightRecorder {
+
+    /**
+     * A request is started. Detail is its key.
+     */
+    public static final int REQUEST = 0;
+
+    /**
+     * The chain moves to a stage. Value is the index of the stage, detail is its name.
+     */
+    public static final int STAGE = 1;
+
+    /**
+     * Permissions are sent to the system. Value is the request code, detail is the permissions.
+     */
+    public static final int SYSTEM_REQUEST = 2;
+
+    /**
+     * The system answers. Value is the number of granted permissions, detail is the permissions.
+     */
+    public static final int SYSTEM_RESULT = 3;
+
+    /**
+     * A rationale dialog is shown. Value is 1 to explain reason and 0 to forward to Settings, detail is the permissions.
+     */
+    public static final int DIALOG_SHOW = 4;
+
+    /**
+     * A button of the rationale dialog is clicked. Value is 1 for the positive button and 0 for the negative one.
+     */
+    public static final int DIALOG_CLICK = 5;
+
+    /**
+     * The rationale dialog is dismissed.
+     */
+    public static final int DIALOG_DISMISS = 6;
+
+    /**
+     * A Settings page is started. Value is the request code.
+     */
+    public static final int SETTINGS_HOP = 7;
+
+    /**
+     * The request goes on after a Settings page. Value is the request code, detail tells what let it go on.
+     */
+    public static final int SETTINGS_RETURN = 8;
+
+    /**
+     * A result is ignored. Value is the request code, detail tells why.
+     */
+    public static final int RESULT_DROPPED = 9;
+
+    /**
+     * The result is delivered to the callback. Value is 1 if all permissions are granted.
+     */
+    public static final int FINISH = 10;
+
+    private static final String[] NAMES = {"REQUEST", "STAGE", "SYSTEM_REQUEST", "SYSTEM_RESULT", "DIALOG_SHOW",
+            "DIALOG_CLICK", "DIALOG_DISMISS", "SETTINGS_HOP", "SETTINGS_RETURN", "RESULT_DROPPED", "FINISH"};
+
+    /**
+     * Number of events kept. A power of 2.
+     */
+    public static final int CAPACITY = 256;
+
+    private static final int MASK = CAPACITY - 1;
+
+    private static volatile boolean enabled = true;
+
+    private static final AtomicInteger tokens = new AtomicInteger();
+
+    /**
+     * Sequence number of the next event.
+     */
+    private static final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * Sequence number of the event in each slot, or -1 while the slot is written.
+     */
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+
+    /**
+     * Time of the event in each slot, in {@link SystemClock#uptimeMillis()}.
+     */
+    private static final AtomicLongArray times = new AtomicLongArray(CAPACITY);
+
+    /**
+     * Event type in the high half and request token in the low half of each slot.
+     */
+    private static final AtomicLongArray headers = new AtomicLongArray(CAPACITY);
+
+    private static final AtomicLongArray values = new AtomicLongArray(CAPACITY);
+
+    /**
+     * Strings, string arrays or collections of strings that don't change any more. Never anything that may hold the host.
+     */
+    private static final AtomicReferenceArray<Object> details = new AtomicReferenceArray<>(CAPACITY);
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    private FlightRecorder() {
+    }
+
+    /**
+     * Turn recording on or off. On by default.
+     */
+    public static void setEnabled(boolean enabled) {
+        FlightRecorder.enabled = enabled;
+    }
+
+    /**
+     * @return A new token to tell the events of a request from the others.
+     */
+    public static int nextToken() {
+        return tokens.incrementAndGet();
+    }
+
+    /**
+     * Record an event without detail.
+     */
+    public static void record(int event, int token, int value) {
+        record(event, token, value, null);
+    }
+
+    /**
+     * Record an event.
+     * @param event
+     *          One of the event constants of this class.
+     * @param token
+     *          Token of the request, or 0 if there's no request.
+     * @param value
+     *          Meaning depends on the event.
+     * @param detail
+     *          A string, string array or collection of strings, formatted only in the dump. Must not change after
+     *          it's recorded, and must not hold the host.
+     */
+    public static void record(int event, int token, int value, Object detail) {
+        if (!enabled) {
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+        sequences.set(slot, -1);
+        times.set(slot, SystemClock.uptimeMillis());
+        headers.set(slot, ((long) event << 32) | (token & 0xFFFFFFFFL));
+        values.set(slot, value);
+        details.set(slot, detail);
+        sequences.set(slot, sequence);
+    }
+
+    /**
+     * Print the recorded events, oldest first.
+     */
+    public static void dump(@NonNull PrintWriter writer) {
+        long end = cursor.get();
+        long start = Math.max(0, end - CAPACITY);
+        long now = SystemClock.uptimeMillis();
+        writer.println("PermissionX flight recorder: " + (end - start) + " of " + end + " events, now " + now);
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & MASK);
+            if (sequences.get(slot) != sequence) {
+                // Not written yet, or overwritten by a newer event.
+                continue;
+            }
+            long time = times.get(slot);
+            long header = headers.get(slot);
+            long value = values.get(slot);
+            Object detail = details.get(slot);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            int event = (int) (header >>> 32);
+            writer.print("  -" + (now - time) + "ms #" + (int) header + " " + NAMES[event] + " " + value);
+            if (detail != null) {
+                writer.print(" " + (detail instanceof Object[] ? Arrays.toString((Object[]) detail) : detail));
+            }
+            writer.println();
+        }
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.log;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A {@link PermissionXLogger} which writes to logcat. Usually installed in debug builds only:
+ * <pre>
+ *   if (BuildConfig.DEBUG) {
+ *       PermissionX.setLogger(new LogcatLogger(Log.DEBUG));
+ *   }
+ * </pre>
+ */
+public class LogcatLogger implements PermissionXLogger {
+
+    /**
+     * Messages below this priority will not be logged.
+     */
+    private final int minPriority;
+
+    /**
+     * @param minPriority
+     *          Messages below this priority will not be logged. One of the {@link Log} constants.
+     */
+    public LogcatLogger(int minPriority) {
+        this.minPriority = minPriority;
+    }
+
+    @Override
+    public boolean isLoggable(int priority) {
+        return priority >= minPriority;
+    }
+
+    @Override
+    public void log(int priority, @NonNull String tag, @NonNull String message) {
+        Log.println(priority, tag, message);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.log;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Entry of all PermissionX internal logs. Call sites must check {@link #isLoggable(int)} before building a message:
+ * <pre>
+ *   if (PermissionXLog.isLoggable(Log.DEBUG)) {
+ *       PermissionXLog.d("granted: " + grantedList);
+ *   }
+ * </pre>
+ * So nothing is built when no logger is installed. Apps can also strip every call site in release builds with R8:
+ * <pre>
+ *   -assumevalues class com.permissionx.qizhou1994.log.PermissionXLog {
+ *       public static boolean isLoggable(int) return false;
+ *   }
+ * </pre>
+ */
+public final class PermissionXLog {
+
+    /**
+     * Tag of all PermissionX logs.
+     */
+    public static final String TAG = "PermissionX";
+
+    /**
+     * The installed logger. Null means log nothing.
+     */
+    private static volatile PermissionXLogger logger;
+
+    private PermissionXLog() {
+    }
+
+    /**
+     * Install the logger, or pass null to log nothing.
+     */
+    public static void setLogger(PermissionXLogger logger) {
+        PermissionXLog.logger = logger;
+    }
+
+    /**
+     * Check if a message at this priority will be logged.
+     * @param priority
+     *          Priority of the message, one of the {@link Log} constants.
+     * @return True if a logger is installed and accepts this priority.
+     */
+    public static boolean isLoggable(int priority) {
+        PermissionXLogger current = logger;
+        return current != null && current.isLoggable(priority);
+    }
+
+    /**
+     * Log a debug message. Guard with {@link #isLoggable(int)}.
+     */
+    public static void d(@NonNull String message) {
+        log(Log.DEBUG, message);
+    }
+
+    /**
+     * Log a warning message. Guard with {@link #isLoggable(int)}.
+     */
+    public static void w(@NonNull String message) {
+        log(Log.WARN, message);
+    }
+
+    private static void log(int priority, String message) {
+        PermissionXLogger current = logger;
+        if (current != null) {
+            current.log(priority, TAG, message);
+        }
+    }
+
+}
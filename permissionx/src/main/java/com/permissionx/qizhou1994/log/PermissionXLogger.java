@@ -0,0 +1,47 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Logger that PermissionX writes its internal logs to. Install one by {@link com.permissionx.qizhou1994.PermissionX#setLogger(PermissionXLogger)}.
+ * By default no logger is installed and PermissionX logs nothing.
+ */
+public interface PermissionXLogger {
+
+    /**
+     * Check if a message at this priority will be logged. PermissionX always calls this method before it builds any message,
+     * so a logger which returns false costs nothing more than this call.
+     * @param priority
+     *          Priority of the message, one of the {@link android.util.Log} constants. e.g. {@link android.util.Log#DEBUG}.
+     * @return True if the message should be built and passed to {@link #log(int, String, String)}, false otherwise.
+     */
+    boolean isLoggable(int priority);
+
+    /**
+     * Write a message. Only called if {@link #isLoggable(int)} returns true for the same priority.
+     * @param priority
+     *          Priority of the message, one of the {@link android.util.Log} constants.
+     * @param tag
+     *          Tag of the message.
+     * @param message
+     *          The message to log.
+     */
+    void log(int priority, @NonNull String tag, @NonNull String message);
+
+}
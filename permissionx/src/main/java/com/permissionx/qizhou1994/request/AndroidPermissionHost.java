@@ -0,0 +1,70 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994.request;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+import androidx.fragment.app.FragmentActivity;
+
+import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.checker.SystemCalls;
+import com.permissionx.qizhou1994.core.PermissionHost;
+import com.permissionx.qizhou1994.log.PermissionXLog;
+
+/**
+ * Answers the system calls of the request state machine on Android.
+ * Grant checks go through the installed PermissionChecker. Rationale is queried from the activity,
+ * which is also what Fragment.shouldShowRequestPermissionRationale does.
+ * <p>
+ * Called through {@link SystemCalls}, so it may run off the main thread.
+ */
+class AndroidPermissionHost implements PermissionHost {
+
+    private final Context context;
+
+    private final FragmentActivity activity;
+
+    AndroidPermissionHost(FragmentActivity activity) {
+        this.context = activity;
+        this.activity = activity;
+    }
+
+    @Override
+    public boolean[] areGranted(String[] permissions) {
+        warnIfOnMainThread();
+        return PermissionX.getPermissionChecker().areGranted(context, permissions);
+    }
+
+    @Override
+    public boolean shouldShowRationale(String permission) {
+        warnIfOnMainThread();
+        return ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
+    }
+
+    /**
+     * With a system call executor installed, no system call should be left on the main thread.
+     */
+    private void warnIfOnMainThread() {
+        if (SystemCalls.isOffMainThread() && Looper.myLooper() == Looper.getMainLooper() && PermissionXLog.isLoggable(Log.WARN)) {
+            PermissionXLog.w("System call on the main thread while a system call executor is installed.");
+        }
+    }
+
+}
@@ -16,15 +16,12 @@
 
 package com.permissionx.qizhou1994.request;
 
-import android.Manifest;
-import android.os.Build;
-import android.os.Environment;
-import android.provider.Settings;
+import android.content.Context;
 
 import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.checker.SystemCalls;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Define a BaseTask to implement the duplicate logic codes. No need to implement them in every task.
@@ -34,11 +31,6 @@ import java.util.List;
  */
 abstract class BaseTask implements ChainTask {
 
-    /**
-     * Point to the next task. When this task finish will run next task. If there's no next task, the request process end.
-     */
-    protected ChainTask next;
-
     /**
      * Instance of PermissionBuilder.
      */
@@ -70,52 +62,33 @@ abstract class BaseTask implements ChainTask {
         return forwardToSettingsScope;
     }
 
+    /**
+     * Check if permissions are granted through {@link SystemCalls}, and continue with the answers on the main thread.
+     * Answers from the prefetch of {@link PermissionBuilder} are used when it has them. Nothing is called back if the
+     * request is finished or released meanwhile.
+     * @param permissions
+     *          Permissions to check.
+     * @param callback
+     *          Receives an array of the same length as permissions. Element i is true if permissions[i] is granted.
+     */
+    void checkGranted(final String[] permissions, SystemCalls.Callback<boolean[]> callback) {
+        callback = pb.whileAlive(callback);
+        if (pb.prefetch != null && pb.prefetch.check(permissions, callback)) {
+            return;
+        }
+        final Context context = pb.activity;
+        SystemCalls.run(new Callable<boolean[]>() {
+            @Override
+            public boolean[] call() {
+                return PermissionX.getPermissionChecker().areGranted(context, permissions);
+            }
+        }, callback);
+    }
+
     @Override
     public void finish() {
-        if (next != null) { // If there's next task, then run it.
-            next.request();
-        } else { // If there's no next task, finish the request process and notify the result
-            List<String> deniedList = new ArrayList<>();
-            deniedList.addAll(pb.deniedPermissions);
-            deniedList.addAll(pb.permanentDeniedPermissions);
-            deniedList.addAll(pb.permissionsWontRequest);
-            if (pb.shouldRequestBackgroundLocationPermission()) {
-                if (PermissionX.isGranted(pb.activity, RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION)) {
-                    pb.grantedPermissions.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                } else {
-                    deniedList.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                }
-            }
-            if (pb.shouldRequestSystemAlertWindowPermission()
-                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
-                    && pb.getTargetSdkVersion() >= Build.VERSION_CODES.M) {
-                if (Settings.canDrawOverlays(pb.activity)) {
-                    pb.grantedPermissions.add(Manifest.permission.SYSTEM_ALERT_WINDOW);
-                } else {
-                    deniedList.add(Manifest.permission.SYSTEM_ALERT_WINDOW);
-                }
-            }
-            if (pb.shouldRequestWriteSettingsPermission()
-                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
-                    && pb.getTargetSdkVersion() >= Build.VERSION_CODES.M) {
-                if (Settings.System.canWrite(pb.activity)) {
-                    pb.grantedPermissions.add(Manifest.permission.WRITE_SETTINGS);
-                } else {
-                    deniedList.add(Manifest.permission.WRITE_SETTINGS);
-                }
-            }
-            if (pb.shouldRequestManageExternalStoragePermission()) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R &&
-                        Environment.isExternalStorageManager()) {
-                    pb.grantedPermissions.add(RequestManageExternalStoragePermission.MANAGE_EXTERNAL_STORAGE);
-                } else {
-                    deniedList.add(RequestManageExternalStoragePermission.MANAGE_EXTERNAL_STORAGE);
-                }
-            }
-            if (pb.requestCallback != null) {
-                pb.requestCallback.onResult(deniedList.isEmpty(), new ArrayList<>(pb.grantedPermissions), deniedList);
-            }
-        }
+        // The chain runs the next task, or notifies the result if this is the last one.
+        pb.chain.onStageFinished(this);
     }
 
 }
@@ -16,6 +16,8 @@
 
 package com.permissionx.qizhou1994.request;
 
+import com.permissionx.qizhou1994.core.ChainExecutor;
+
 import java.util.List;
 
 /**
@@ -26,7 +28,7 @@ import java.util.List;
  * @author guolin
  * @since 2020/6/10
  */
-public interface ChainTask {
+public interface ChainTask extends ChainExecutor.Stage {
 
     /**
      * Get the ExplainScope for showing RequestReasonDialog.
@@ -43,6 +45,7 @@ public interface ChainTask {
     /**
      * Do the request logic.
      */
+    @Override
     void request();
 
     /**
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.content.Context;
+
+import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.checker.SystemCalls;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Checks the grant state of every permission of a request on the system call executor as soon as the permission set
+ * is known, so the tasks start with the answers ready instead of checking them one task at a time.
+ * The answers are only good until PermissionX asks the user for anything. After that the tasks check again.
+ */
+final class GrantStatePrefetch {
+
+    /**
+     * Permissions checked by the prefetch.
+     */
+    private final String[] permissions;
+
+    /**
+     * Grant state of every permission, in the same order. Null until the prefetch is done.
+     */
+    private boolean[] granted;
+
+    /**
+     * Checks asked for before the prefetch is done. Maybe null.
+     */
+    private List<PendingCheck> pendingChecks;
+
+    private GrantStatePrefetch(String[] permissions) {
+        this.permissions = permissions;
+    }
+
+    /**
+     * Start a prefetch of the grant state of permissions through {@link SystemCalls}.
+     *
+     * @param context
+     *          Context to check the permissions with.
+     * @param permissions
+     *          Permissions to check.
+     * @return The started prefetch, or null if it is not started.
+     */
+    static GrantStatePrefetch start(final Context context, final String[] permissions) {
+        if (context == null || permissions.length == 0) {
+            return null;
+        }
+        final GrantStatePrefetch prefetch = new GrantStatePrefetch(permissions);
+        SystemCalls.run(new Callable<boolean[]>() {
+            @Override
+            public boolean[] call() {
+                return PermissionX.getPermissionChecker().areGranted(context, permissions);
+            }
+        }, new SystemCalls.Callback<boolean[]>() {
+            @Override
+            public void onResult(boolean[] result) {
+                prefetch.onPrefetched(result);
+            }
+        });
+        return prefetch;
+    }
+
+    /**
+     * Answer a grant check from the prefetch. When the prefetch is still running, the callback waits for it.
+     *
+     * @param wanted
+     *          Permissions to check.
+     * @param callback
+     *          Receives the grant state of wanted, on the main thread. Wrapped by {@link PermissionBuilder#whileAlive},
+     *          so a check still waiting when its request is released is dropped.
+     * @return False if the prefetch doesn't cover every wanted permission, and the caller should check them itself.
+     */
+    boolean check(String[] wanted, SystemCalls.Callback<boolean[]> callback) {
+        for (String permission : wanted) {
+            if (indexOf(permission) < 0) {
+                return false;
+            }
+        }
+        if (granted != null) {
+            callback.onResult(pick(wanted));
+        } else {
+            if (pendingChecks == null) {
+                pendingChecks = new ArrayList<>();
+            }
+            pendingChecks.add(new PendingCheck(wanted, callback));
+        }
+        return true;
+    }
+
+    private void onPrefetched(boolean[] result) {
+        granted = result;
+        List<PendingCheck> checks = pendingChecks;
+        pendingChecks = null;
+        if (checks != null) {
+            for (PendingCheck check : checks) {
+                check.callback.onResult(pick(check.permissions));
+            }
+        }
+    }
+
+    private boolean[] pick(String[] wanted) {
+        boolean[] result = new boolean[wanted.length];
+        for (int i = 0; i < wanted.length; i++) {
+            result[i] = granted[indexOf(wanted[i])];
+        }
+        return result;
+    }
+
+    private int indexOf(String permission) {
+        for (int i = 0; i < permissions.length; i++) {
+            if (permissions[i].equals(permission)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A grant check waiting for the prefetch.
+     */
+    private static final class PendingCheck {
+
+        final String[] permissions;
+
+        final SystemCalls.Callback<boolean[]> callback;
+
+        PendingCheck(String[] permissions, SystemCalls.Callback<boolean[]> callback) {
+            this.permissions = permissions;
+            this.callback = callback;
+        }
+
+    }
+
+}
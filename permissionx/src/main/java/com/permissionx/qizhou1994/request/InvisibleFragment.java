@@ -16,25 +16,37 @@
 
 package com.permissionx.qizhou1994.request;
 
-import android.Manifest;
-import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.os.Build;
-import android.os.Environment;
-import android.provider.Settings;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.ViewModelStoreOwner;
 
 import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.checker.SystemCalls;
+import com.permissionx.qizhou1994.core.ChainCheckpoint;
+import com.permissionx.qizhou1994.core.ChainExecutor;
+import com.permissionx.qizhou1994.core.Decision;
+import com.permissionx.qizhou1994.core.RequestState;
+import com.permissionx.qizhou1994.core.RequestStateMachine;
+import com.permissionx.qizhou1994.log.FlightRecorder;
+import com.permissionx.qizhou1994.log.PermissionXLog;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * An invisible fragment to embedded into activity for handling permission requests.
@@ -75,16 +87,103 @@ public class InvisibleFragment extends Fragment {
      */
     public static final int ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION = 4;
 
+    /**
+     * Key of the saved request in the saved instance state.
+     */
+    private static final String KEY_CHECKPOINT = "permissionx_checkpoint";
+
+    /**
+     * Key of {@link #awaitingResult} in the saved instance state.
+     */
+    private static final String KEY_AWAITING_RESULT = "permissionx_awaiting_result";
+
+    /**
+     * Key of {@link #resultHandledEarly} in the saved instance state.
+     */
+    private static final String KEY_RESULT_HANDLED_EARLY = "permissionx_result_handled_early";
+
+    /**
+     * Key of {@link #settingsHop} in the saved instance state.
+     */
+    private static final String KEY_SETTINGS_HOP = "permissionx_settings_hop";
+
+    /**
+     * Key of {@link #allowedWhileStopped} in the saved instance state.
+     */
+    private static final String KEY_ALLOWED_WHILE_STOPPED = "permissionx_allowed_while_stopped";
+
     /**
      * Instance of PermissionBuilder.
      */
     private PermissionBuilder pb;
 
+    /**
+     * Indicates a permission or Settings result is on the way. Saved with the request, so we know whether to wait or run the stage again.
+     */
+    private boolean awaitingResult;
+
+    /**
+     * The request saved before the process was killed, waiting for {@link #continueFromCheckpoint(PermissionBuilder)}. Maybe null.
+     */
+    private byte[] savedCheckpoint;
+
+    /**
+     * A result that came back after this fragment was recreated, but before the request is run again. Maybe null.
+     */
+    private Runnable pendingResult;
+
+    /**
+     * Watches the app op of the special permission whose Settings page is open. Maybe null.
+     */
+    private SettingsOpWatcher opWatcher;
+
+    /**
+     * Request code of the Settings page whose result was handled before it came back, by {@link #opWatcher} or when the
+     * host resumed, so the result is ignored when it comes. 0 if none. Reset when another Settings page is opened or the
+     * request is forgotten, so it never swallows a result that belongs to them.
+     */
+    private int resultHandledEarly;
+
+    /**
+     * Request code of the Settings page that is open and whose result is not handled yet. 0 if none.
+     * Some ROMs never call {@link #onActivityResult(int, int, Intent)} for it, so it's handled when the host resumes instead.
+     */
+    private int settingsHop;
+
+    /**
+     * Indicates the host was paused after {@link #settingsHop} was started, so resuming means user switched back.
+     */
+    private boolean settingsHopLeft;
+
+    /**
+     * Request code of the Settings page whose permission user allowed while the host was stopped under it. The request
+     * goes on once the host resumes, since the next stage may show a dialog, open another Settings page or call back
+     * into the app, none of which works while the host has saved its state. 0 if none.
+     */
+    private int allowedWhileStopped;
+
+    /**
+     * Indicates this fragment was recreated with its host, and hasn't checked for requests the recreated host left behind yet.
+     */
+    private boolean recreated;
+
     /**
      * Instance of current task.
      */
     private ChainTask task;
 
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Removes this fragment from the host once it has been idle for {@link PermissionX#getInvisibleFragmentIdleTimeout()}.
+     */
+    private final Runnable detachIfIdle = new Runnable() {
+        @Override
+        public void run() {
+            detachIfIdle();
+        }
+    };
+
     /**
      * Request permissions at once by calling {@link Fragment#requestPermissions(String[], int)},
      * and handle request result in ActivityCompat.OnRequestPermissionsResultCallback.
@@ -96,7 +195,15 @@ public class InvisibleFragment extends Fragment {
     void requestNow(PermissionBuilder permissionBuilder, Set<String> permissions, ChainTask chainTask) {
         pb = permissionBuilder;
         task = chainTask;
-        requestPermissions(permissions.toArray(new String[0]), REQUEST_NORMAL_PERMISSIONS);
+        if (permissions.isEmpty()) {
+            // Every permission was left out by the planner, so there's nothing to ask the system.
+            onRequestNormalPermissionsResult(new String[0], new int[0]);
+            return;
+        }
+        awaitingResult = true;
+        String[] permissionArray = permissions.toArray(new String[0]);
+        FlightRecorder.record(FlightRecorder.SYSTEM_REQUEST, pb.token, REQUEST_NORMAL_PERMISSIONS, permissionArray);
+        requestPermissions(permissionArray, REQUEST_NORMAL_PERMISSIONS);
     }
 
     /**
@@ -109,58 +216,194 @@ public class InvisibleFragment extends Fragment {
     void requestAccessBackgroundLocationNow(PermissionBuilder permissionBuilder, ChainTask chainTask) {
         pb = permissionBuilder;
         task = chainTask;
+        awaitingResult = true;
+        FlightRecorder.record(FlightRecorder.SYSTEM_REQUEST, pb.token, REQUEST_BACKGROUND_LOCATION_PERMISSION,
+                RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
         requestPermissions(new String[]{RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION}, REQUEST_BACKGROUND_LOCATION_PERMISSION);
     }
 
     /**
-     * Request SYSTEM_ALERT_WINDOW permission. On Android M and above, it's request by
-     * Settings.ACTION_MANAGE_OVERLAY_PERMISSION with Intent.
+     * Request a special permission in the Settings page of its handler, and handle the result when user switch back
+     * or as soon as user allows it there.
+     *
+     * @param permissionBuilder The instance of PermissionBuilder.
+     * @param handler           The handler of the permission.
+     * @param chainTask         Instance of current task.
      */
-    @TargetApi(Build.VERSION_CODES.M)
-    void requestSystemAlertWindowPermissionNow(PermissionBuilder permissionBuilder, ChainTask chainTask) {
+    void requestSpecialPermissionNow(PermissionBuilder permissionBuilder, final SpecialPermissionHandler handler, ChainTask chainTask) {
         pb = permissionBuilder;
         task = chainTask;
-        if (!Settings.canDrawOverlays(getContext())) {
-            Intent intent = new Intent(Settings.ACTION_MANAGE_OVERLAY_PERMISSION);
-            startActivityForResult(intent, ACTION_MANAGE_OVERLAY_PERMISSION);
-        } else {
-            onRequestSystemAlertWindowPermissionResult();
+        if (!handler.isAvailable(getContext())) {
+            task.finish();
+            return;
         }
+        checkGranted(handler.getPermission(), new SystemCalls.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean granted) {
+                if (!isAdded()) {
+                    // The host was recreated while we checked. Start over in the InvisibleFragment of the recreated host.
+                    pb.requestSpecialPermissionNow(handler, task);
+                } else if (!granted) {
+                    startSettingsForResult(handler.createIntent(getContext()), handler.requestCode);
+                    String op = handler.getAppOp();
+                    if (op != null) {
+                        watchSettingsOp(handler.requestCode, op, handler.getPermission());
+                    }
+                } else {
+                    onSpecialPermissionChecked(handler, true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Go to the Settings page of current app, and handle the result when user switch back.
+     *
+     * @param intent Intent of the Settings page.
+     */
+    void forwardToSettingsNow(Intent intent) {
+        startSettingsForResult(intent, FORWARD_TO_SETTINGS);
+    }
+
+    /**
+     * Start a Settings page and wait for user to switch back, whether onActivityResult() or the host resuming comes first.
+     *
+     * @param intent      Intent of the Settings page.
+     * @param requestCode Code to handle the result with.
+     */
+    private void startSettingsForResult(Intent intent, int requestCode) {
+        awaitingResult = true;
+        // A page handled early never sent its result. Don't let it swallow the result of this one if it has the same code.
+        resultHandledEarly = 0;
+        settingsHop = requestCode;
+        settingsHopLeft = false;
+        FlightRecorder.record(FlightRecorder.SETTINGS_HOP, token(), requestCode);
+        startActivityForResult(intent, requestCode);
     }
 
     /**
-     * Request WRITE_SETTINGS permission. On Android M and above, it's request by
-     * Settings.ACTION_MANAGE_WRITE_SETTINGS with Intent.
+     * Continue the request saved before the process was killed, if it has the same key as permissionBuilder.
+     * The permission sets and the stage of the chain are restored into permissionBuilder, and a result that already
+     * came back is handled at once.
+     *
+     * @param permissionBuilder The instance of PermissionBuilder, with the callbacks registered again.
+     * @return True if the saved request continues, false if there's no saved request with this key.
      */
-    @TargetApi(Build.VERSION_CODES.M)
-    void requestWriteSettingsPermissionNow(PermissionBuilder permissionBuilder, ChainTask chainTask) {
+    boolean continueFromCheckpoint(PermissionBuilder permissionBuilder) {
+        ChainCheckpoint checkpoint = ChainCheckpoint.fromBytes(savedCheckpoint);
+        if (checkpoint == null || !checkpoint.requestKey.equals(permissionBuilder.requestKey)) {
+            return false;
+        }
+        savedCheckpoint = null;
+        checkpoint.applyTo(permissionBuilder.state);
+        permissionBuilder.explainReasonBeforeRequest = checkpoint.explainReasonBeforeRequest;
+        ChainExecutor chain = permissionBuilder.newChain();
+        permissionBuilder.chain = chain;
         pb = permissionBuilder;
-        task = chainTask;
-        if (!Settings.System.canWrite(getContext())) {
-            Intent intent = new Intent(Settings.ACTION_MANAGE_WRITE_SETTINGS);
-            startActivityForResult(intent, ACTION_WRITE_SETTINGS_PERMISSION);
-        } else {
-            onRequestWriteSettingsPermissionResult();
+        // A stage that isn't waiting for a result runs again and checks the permission itself.
+        allowedWhileStopped = 0;
+        boolean waitForResult = checkpoint.awaitingResult;
+        if (!chain.restoreAt(checkpoint.stage, !waitForResult)) {
+            // The stage doesn't exist in this version, start over.
+            chain.start();
+            return true;
+        }
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Continue request " + checkpoint.requestKey + " from " + chain);
+        }
+        if (waitForResult) {
+            task = (ChainTask) chain.getCurrentStage();
+            if (pendingResult != null) {
+                Runnable result = pendingResult;
+                pendingResult = null;
+                result.run();
+            }
         }
+        return true;
     }
 
     /**
-     * Request MANAGE_EXTERNAL_STORAGE permission. On Android R and above, it's request by
-     * Settings.ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION with Intent.
+     * Take over a request in flight after this fragment was recreated by a configuration change.
+     * A result that already came back is handled at once.
+     *
+     * @param permissionBuilder The request in flight, already moved to the recreated host.
+     * @return True if a permission or Settings result is still on the way or was just handled, false otherwise.
      */
-    void requestManageExternalStoragePermissionNow(PermissionBuilder permissionBuilder, ChainTask chainTask) {
+    boolean reattach(PermissionBuilder permissionBuilder) {
         pb = permissionBuilder;
-        task = chainTask;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && !Environment.isExternalStorageManager()) {
-            Intent intent = new Intent(Settings.ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION);
-            startActivityForResult(intent, ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION);
-        } else {
-            onRequestManageExternalStoragePermissionResult();
+        task = (ChainTask) permissionBuilder.chain.getCurrentStage();
+        // Stopped with the destroyed host. Goes on when this one starts, unless it already has.
+        pb.setHostStopped(!getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED));
+        // The request in flight is more complete than the one saved for process death.
+        savedCheckpoint = null;
+        if (pendingResult != null) {
+            Runnable result = pendingResult;
+            pendingResult = null;
+            result.run();
+            return true;
         }
+        if (allowedWhileStopped != 0) {
+            // Goes on when the recreated host resumes, or at once if it already has.
+            if (isResumed()) {
+                continueAllowedWhileStopped();
+            }
+            return true;
+        }
+        return awaitingResult;
     }
 
     @Override
-    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) {
+            recreated = true;
+            savedCheckpoint = savedInstanceState.getByteArray(KEY_CHECKPOINT);
+            awaitingResult = savedInstanceState.getBoolean(KEY_AWAITING_RESULT);
+            resultHandledEarly = savedInstanceState.getInt(KEY_RESULT_HANDLED_EARLY);
+            settingsHop = savedInstanceState.getInt(KEY_SETTINGS_HOP);
+            allowedWhileStopped = savedInstanceState.getInt(KEY_ALLOWED_WHILE_STOPPED);
+            // The host was recreated, so it certainly left for the Settings page.
+            settingsHopLeft = settingsHop != 0;
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(KEY_AWAITING_RESULT, awaitingResult);
+        outState.putInt(KEY_RESULT_HANDLED_EARLY, resultHandledEarly);
+        outState.putInt(KEY_SETTINGS_HOP, settingsHop);
+        outState.putInt(KEY_ALLOWED_WHILE_STOPPED, allowedWhileStopped);
+        if (pb != null && pb.requestKey != null && pb.chain != null && pb.chain.getStatus() != ChainExecutor.Status.FINISHED) {
+            ChainCheckpoint checkpoint = new ChainCheckpoint(pb.requestKey, pb.chain.getCurrentStageIndex(),
+                    awaitingResult, pb.explainReasonBeforeRequest, pb.state);
+            outState.putByteArray(KEY_CHECKPOINT, checkpoint.toBytes());
+        } else if (savedCheckpoint != null) {
+            // The saved request is not continued yet, keep it for the next time.
+            outState.putByteArray(KEY_CHECKPOINT, savedCheckpoint);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(final int requestCode, @NonNull final String[] permissions, @NonNull final int[] grantResults) {
+        boolean wasAwaitingResult = awaitingResult;
+        awaitingResult = false;
+        FlightRecorder.record(FlightRecorder.SYSTEM_RESULT, token(), countGranted(grantResults), permissions);
+        if (pb == null) {
+            if (!wasAwaitingResult) {
+                // The request this result belongs to is finished.
+                FlightRecorder.record(FlightRecorder.RESULT_DROPPED, 0, requestCode, "finished");
+                return;
+            }
+            // This fragment was recreated by a configuration change or a process restart. Hold the result until the request is run again.
+            pendingResult = new Runnable() {
+                @Override
+                public void run() {
+                    onRequestPermissionsResult(requestCode, permissions, grantResults);
+                }
+            };
+            return;
+        }
         if (requestCode == REQUEST_NORMAL_PERMISSIONS) {
             onRequestNormalPermissionsResult(permissions, grantResults);
         } else if (requestCode == REQUEST_BACKGROUND_LOCATION_PERMISSION) {
@@ -172,23 +415,106 @@ public class InvisibleFragment extends Fragment {
      * Handle the request result when user switch back from Settings.
      */
     @Override
-    public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+    public void onActivityResult(final int requestCode, final int resultCode, @Nullable final Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == resultHandledEarly) {
+            // The request already went on when the op changed or the host resumed. The chain may be waiting for another result by now.
+            resultHandledEarly = 0;
+            FlightRecorder.record(FlightRecorder.RESULT_DROPPED, token(), requestCode, "handled early");
+            return;
+        }
+        settingsHop = 0;
+        FlightRecorder.record(FlightRecorder.SETTINGS_RETURN, token(), requestCode, "result");
+        onSettingsResult(requestCode, resultCode, data);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        if (pb != null) {
+            pb.setHostStopped(false);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (settingsHop != 0) {
+            settingsHopLeft = true;
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if ((settingsHop != 0 && settingsHopLeft) || allowedWhileStopped != 0 || recreated) {
+            // Normally the result comes before the host resumes. Give a late one a chance to come first. A permission
+            // allowed while the host was stopped goes on here too, or on reattach if the host was recreated meanwhile.
+            // By then a recreated host has also run again the requests it continues.
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (recreated) {
+                        recreated = false;
+                        releaseAbandonedRequests();
+                    }
+                    if (allowedWhileStopped != 0 && pb != null && isResumed()) {
+                        continueAllowedWhileStopped();
+                    } else if (settingsHop != 0 && settingsHopLeft && awaitingResult && isResumed()) {
+                        int requestCode = settingsHop;
+                        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+                            PermissionXLog.d("No result from Settings page " + requestCode + " after the host resumed, continue without it");
+                        }
+                        settingsHop = 0;
+                        resultHandledEarly = requestCode;
+                        FlightRecorder.record(FlightRecorder.SETTINGS_RETURN, token(), requestCode, "resume");
+                        onSettingsResult(requestCode, Activity.RESULT_CANCELED, null);
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (pb != null) {
+            // A stage that finishes meanwhile, e.g. with a result that comes before the host starts, holds the next one until then.
+            pb.setHostStopped(true);
+        }
+    }
+
+    /**
+     * Handle the result of the Settings page with requestCode when user switch back, by onActivityResult() or by the host resuming.
+     */
+    private void onSettingsResult(final int requestCode, final int resultCode, final Intent data) {
+        stopWatchingSettingsOp();
+        boolean wasAwaitingResult = awaitingResult;
+        awaitingResult = false;
+        if (pb == null) {
+            if (!wasAwaitingResult) {
+                // The request this result belongs to is finished.
+                FlightRecorder.record(FlightRecorder.RESULT_DROPPED, 0, requestCode, "finished");
+                return;
+            }
+            // This fragment was recreated by a configuration change or a process restart. Hold the result until the request is run again.
+            pendingResult = new Runnable() {
+                @Override
+                public void run() {
+                    onSettingsResult(requestCode, resultCode, data);
+                }
+            };
+            return;
+        }
         // When user switch back from settings, just request again.
         if (checkForGC()) {
-            switch (requestCode) {
-                case FORWARD_TO_SETTINGS:
-                    task.requestAgain(new ArrayList<>(pb.forwardPermissions));
-                    break;
-                case ACTION_MANAGE_OVERLAY_PERMISSION:
-                    onRequestSystemAlertWindowPermissionResult();
-                    break;
-                case ACTION_WRITE_SETTINGS_PERMISSION:
-                    onRequestWriteSettingsPermissionResult();
-                    break;
-                case ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION:
-                    onRequestManageExternalStoragePermissionResult();
-                    break;
+            if (requestCode == FORWARD_TO_SETTINGS) {
+                task.requestAgain(new ArrayList<>(pb.state.forwardPermissions));
+                return;
+            }
+            SpecialPermissionHandler handler = SpecialPermissionHandlers.forRequestCode(requestCode);
+            if (handler != null) {
+                onRequestSpecialPermissionResult(handler, resultCode, data);
             }
         }
     }
@@ -196,99 +522,159 @@ public class InvisibleFragment extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (checkForGC()) {
+        mainHandler.removeCallbacks(detachIfIdle);
+        stopWatchingSettingsOp();
+        // A finished request is already forgotten, that's not a GC problem.
+        if (pb != null && task != null) {
             // Dismiss the showing dialog when InvisibleFragment destroyed for avoiding window leak problem.
             if (pb.currentDialog != null && pb.currentDialog.isShowing()) {
                 pb.currentDialog.dismiss();
             }
+            if (getActivity() != null && getActivity().isChangingConfigurations()) {
+                // The request stays in PermissionRequestViewModel until the recreated host runs it again, or is released
+                // when the recreated host resumes without it. Don't let it hold the destroyed host meanwhile.
+                pb.activity = null;
+                pb.fragment = null;
+            } else {
+                // The host is gone for good, and so is the request. Someone may still hold the builder, don't let it hold the callbacks.
+                PermissionBuilder permissionBuilder = pb;
+                forgetRequest();
+                permissionBuilder.release();
+            }
+        }
+    }
+
+    /**
+     * Forget a finished request, so it's not kept alive by this fragment. A result that comes back later for it is ignored.
+     * This fragment is removed from the host if no other request uses it within the idle timeout.
+     *
+     * @param permissionBuilder The finished request. Nothing happens if this fragment runs another request now.
+     */
+    void onRequestFinished(PermissionBuilder permissionBuilder) {
+        if (pb != permissionBuilder) {
+            return;
+        }
+        forgetRequest();
+        scheduleDetachIfIdle();
+    }
+
+    /**
+     * Release the requests that were in flight when the host was recreated by a configuration change, if the recreated
+     * host didn't run them again by the time it resumed, as when they were started by a click. Otherwise they and the
+     * destroyed host their callbacks capture stay reachable until the recreated host is destroyed, and a result held for
+     * them keeps this fragment in the host.
+     */
+    private void releaseAbandonedRequests() {
+        ViewModelStoreOwner owner = getParentFragment();
+        if (owner == null) {
+            owner = getActivity();
+        }
+        if (owner == null || !PermissionRequestViewModel.of(owner).releaseDetached() || pb != null) {
+            return;
+        }
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Release the requests the recreated host didn't run again");
+        }
+        FlightRecorder.record(FlightRecorder.RESULT_DROPPED, 0, 0, "abandoned");
+        forgetRequest();
+        savedCheckpoint = null;
+        scheduleDetachIfIdle();
+    }
+
+    /**
+     * Remove this fragment from the host once it has been idle for {@link PermissionX#getInvisibleFragmentIdleTimeout()}.
+     */
+    private void scheduleDetachIfIdle() {
+        long idleTimeout = PermissionX.getInvisibleFragmentIdleTimeout();
+        mainHandler.removeCallbacks(detachIfIdle);
+        if (idleTimeout >= 0) {
+            mainHandler.postDelayed(detachIfIdle, idleTimeout);
         }
     }
 
+    /**
+     * Drop the references to the current request and stop waiting for its results.
+     */
+    private void forgetRequest() {
+        stopWatchingSettingsOp();
+        pb = null;
+        task = null;
+        pendingResult = null;
+        awaitingResult = false;
+        settingsHop = 0;
+        resultHandledEarly = 0;
+        allowedWhileStopped = 0;
+    }
+
     /**
      * Handle result of normal permissions request.
      */
-    private void onRequestNormalPermissionsResult(String[] permissions, int[] grantResults) {
+    private void onRequestNormalPermissionsResult(final String[] permissions, int[] grantResults) {
         if (checkForGC() && permissions != null && grantResults != null && permissions.length == grantResults.length) {
-            // We can never holds granted permissions for safety, because user may turn some permissions off in settings.
-            // So every time request, must request the already granted permissions again and refresh the granted permission set.
-            pb.grantedPermissions.clear();
-            List<String> showReasonList = new ArrayList<>(); // holds denied permissions in the request permissions.
-            List<String> forwardList = new ArrayList<>(); // hold permanently denied permissions in the request permissions.
-            for (int i = 0; i < permissions.length; i++) {
-                String permission = permissions[i];
-                if (grantResults[i] == PackageManager.PERMISSION_GRANTED) {
-                    pb.grantedPermissions.add(permission);
-                    // Remove granted permissions from deniedPermissions and permanentDeniedPermissions set in PermissionBuilder.
-                    pb.deniedPermissions.remove(permission);
-                    pb.permanentDeniedPermissions.remove(permission);
-                } else {
-                    // Denied permission can turn into permanent denied permissions, but permanent denied permission can not turn into denied permissions.
-                    boolean shouldShowRationale = shouldShowRequestPermissionRationale(permission);
-                    if (shouldShowRationale) {
-                        showReasonList.add(permissions[i]);
-                        pb.deniedPermissions.add(permission);
-                        // So there's no need to remove the current permission from permanentDeniedPermissions because it won't be there.
-                    } else {
-                        forwardList.add(permissions[i]);
-                        pb.permanentDeniedPermissions.add(permission);
-                        // We must remove the current permission from deniedPermissions because it is permanent denied permission now.
-                        pb.deniedPermissions.remove(permission);
-                    }
-                }
+            final boolean[] granted = new boolean[grantResults.length];
+            for (int i = 0; i < grantResults.length; i++) {
+                granted[i] = grantResults[i] == PackageManager.PERMISSION_GRANTED;
             }
-            Log.e("de","de");
-            List<String> deniedPermissions = new ArrayList<>(); // used to validate the deniedPermissions and permanentDeniedPermissions
-            deniedPermissions.addAll(pb.deniedPermissions);
-            deniedPermissions.addAll(pb.permanentDeniedPermissions);
-            // maybe user can turn some permissions on in settings that we didn't request, so check the denied permissions again for safety.
-            for (String permission : deniedPermissions) {
-                if (PermissionX.isGranted(getContext(), permission)) {
-                    pb.deniedPermissions.remove(permission);
-                    pb.grantedPermissions.add(permission);
+            final RequestState state = pb.state;
+            // The worker moves permissions between the sets of a copy. The copy is applied on the main thread, where
+            // onSaveInstanceState() reads the state.
+            final RequestState work = state.copy();
+            final AndroidPermissionHost host = new AndroidPermissionHost(getActivity());
+            final boolean hasExplainReasonCallback = pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null;
+            final boolean hasForwardToSettingsCallback = pb.forwardToSettingsCallback != null;
+            SystemCalls.run(new Callable<Decision>() {
+                @Override
+                public Decision call() {
+                    return RequestStateMachine.onNormalPermissionsResult(work, permissions, granted, host,
+                            hasExplainReasonCallback, hasForwardToSettingsCallback);
+                }
+            }, pb.whileAlive(new SystemCalls.Callback<Decision>() {
+                @Override
+                public void onResult(Decision decision) {
+                    state.copyFrom(work);
+                    onNormalPermissionsDecision(decision);
                 }
+            }));
+        }
+    }
+
+    /**
+     * Notify the callbacks about the decision on the result of normal permissions request.
+     */
+    private void onNormalPermissionsDecision(Decision decision) {
+        if (checkForGC()) {
+            if (PermissionXLog.isLoggable(Log.DEBUG)) {
+                PermissionXLog.d("onRequestNormalPermissionsResult: " + decision + ", denied " + pb.state.deniedPermissions
+                        + ", permanently denied " + pb.state.permanentDeniedPermissions + ", " + pb.getCurrentStage());
             }
-            boolean allGranted = pb.grantedPermissions.size() == pb.normalPermissions.size();
-            if (allGranted) { // If all permissions are granted, finish current task directly.
+            if (pb.state.allNormalPermissionsGranted()) { // If all permissions are granted, finish current task directly.
                 task.finish();
-            } else {
-
-                boolean shouldFinishTheTask = true; // Indicate if we should finish the task
-                // If explainReasonCallback is not null and there're denied permissions. Try the ExplainReasonCallback.
-                if ((pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) && !showReasonList.isEmpty()) {
-                    Log.e("de","explainReasonCallback");
-                    shouldFinishTheTask = false; // shouldn't because ExplainReasonCallback handles it
-                    if (pb.explainReasonCallbackWithBeforeParam != null) {
-                        Log.e("de","explainReasonCallbackWithBeforeParam");
-                        // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                        pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(), new ArrayList<>(pb.deniedPermissions), false);
-                    } else {
-                        Log.e("de","onExplainReason");
-                        pb.explainReasonCallback.onExplainReason(task.getExplainScope(), new ArrayList<>(pb.deniedPermissions));
-                    }
-                    // store these permanently denied permissions or they will be lost when request again.
-                    pb.tempPermanentDeniedPermissions.addAll(forwardList);
-                }
-                // If forwardToSettingsCallback is not null and there're permanently denied permissions. Try the ForwardToSettingsCallback.
-                else if (pb.forwardToSettingsCallback != null && (!forwardList.isEmpty() || !pb.tempPermanentDeniedPermissions.isEmpty())) {
-                    Log.e("de","forwardToSettingsCallback");
-                    shouldFinishTheTask = false; // shouldn't because ForwardToSettingsCallback handles it
-                    pb.tempPermanentDeniedPermissions.clear(); // no need to store them anymore once onForwardToSettings callback.
-                    pb.forwardToSettingsCallback.onForwardToSettings(task.getForwardScope(), new ArrayList<>(pb.permanentDeniedPermissions));
-                }
-                // If showRequestReasonDialog or showForwardToSettingsDialog is not called. We should finish the task.
-                // There's case that ExplainReasonCallback or ForwardToSettingsCallback is called, but developer didn't invoke
-                // showRequestReasonDialog or showForwardToSettingsDialog in the callback.
-                // At this case and all other cases, task should be finished.
-                if (shouldFinishTheTask || !pb.showDialogCalled) {
-                    Log.e("de","task.finish();");
-                    task.finish();
+                return;
+            }
+            boolean shouldFinishTheTask = true; // Indicate if we should finish the task
+            if (decision == Decision.EXPLAIN_REASON) {
+                shouldFinishTheTask = false; // shouldn't because ExplainReasonCallback handles it
+                if (pb.explainReasonCallbackWithBeforeParam != null) {
+                    // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
+                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(), new ArrayList<>(pb.state.deniedPermissions), false);
+                } else {
+                    pb.explainReasonCallback.onExplainReason(task.getExplainScope(), new ArrayList<>(pb.state.deniedPermissions));
                 }
-                Log.e("de","showDialogCalled");
-                // Reset this value after each request. If we don't do this, developer invoke showRequestReasonDialog in ExplainReasonCallback
-                // but didn't invoke showForwardToSettingsDialog in ForwardToSettingsCallback, the request process will be lost. Because the
-                // previous showDialogCalled affect the next request logic.
-                pb.showDialogCalled = false;
+            } else if (decision == Decision.FORWARD_TO_SETTINGS) {
+                shouldFinishTheTask = false; // shouldn't because ForwardToSettingsCallback handles it
+                pb.forwardToSettingsCallback.onForwardToSettings(task.getForwardScope(), new ArrayList<>(pb.state.permanentDeniedPermissions));
+            }
+            // If showRequestReasonDialog or showForwardToSettingsDialog is not called. We should finish the task.
+            // There's case that ExplainReasonCallback or ForwardToSettingsCallback is called, but developer didn't invoke
+            // showRequestReasonDialog or showForwardToSettingsDialog in the callback.
+            // At this case and all other cases, task should be finished.
+            if (shouldFinishTheTask || !pb.showDialogCalled) {
+                task.finish();
             }
+            // Reset this value after each request. If we don't do this, developer invoke showRequestReasonDialog in ExplainReasonCallback
+            // but didn't invoke showForwardToSettingsDialog in ForwardToSettingsCallback, the request process will be lost. Because the
+            // previous showDialogCalled affect the next request logic.
+            pb.showDialogCalled = false;
         }
     }
 
@@ -297,109 +683,235 @@ public class InvisibleFragment extends Fragment {
      */
     private void onRequestBackgroundLocationPermissionResult() {
         if (checkForGC()) {
-            if (PermissionX.isGranted(getContext(), RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION)) {
-                pb.grantedPermissions.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                // Remove granted permissions from deniedPermissions and permanentDeniedPermissions set in PermissionBuilder.
-                pb.deniedPermissions.remove(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                pb.permanentDeniedPermissions.remove(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                task.finish();
-            } else {
-                boolean goesToRequestCallback = true; // Indicate if we should finish the task
-                boolean shouldShowRationale = shouldShowRequestPermissionRationale(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                // If explainReasonCallback is not null and we should show rationale. Try the ExplainReasonCallback.
-                if ((pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) && shouldShowRationale) {
-                    goesToRequestCallback = false; // shouldn't because ExplainReasonCallback handles it
-                    List<String> permissionsToExplain = new ArrayList<>();
-                    permissionsToExplain.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                    if (pb.explainReasonCallbackWithBeforeParam != null) {
-                        // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                        pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(), permissionsToExplain, false);
-                    } else {
-                        pb.explainReasonCallback.onExplainReason(task.getExplainScope(), permissionsToExplain);
-                    }
+            final RequestState state = pb.state;
+            final RequestState work = state.copy();
+            final AndroidPermissionHost host = new AndroidPermissionHost(getActivity());
+            final boolean hasExplainReasonCallback = pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null;
+            final boolean hasForwardToSettingsCallback = pb.forwardToSettingsCallback != null;
+            SystemCalls.run(new Callable<Decision>() {
+                @Override
+                public Decision call() {
+                    return RequestStateMachine.onBackgroundLocationPermissionResult(work, host,
+                            hasExplainReasonCallback, hasForwardToSettingsCallback);
                 }
-                // If forwardToSettingsCallback is not null and we shouldn't show rationale. Try the ForwardToSettingsCallback.
-                else if (pb.forwardToSettingsCallback != null && !shouldShowRationale) {
-                    goesToRequestCallback = false; // shouldn't because ForwardToSettingsCallback handles it
-                    List<String> permissionsToForward = new ArrayList<>();
-                    permissionsToForward.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-                    pb.forwardToSettingsCallback.onForwardToSettings(task.getForwardScope(), permissionsToForward);
+            }, pb.whileAlive(new SystemCalls.Callback<Decision>() {
+                @Override
+                public void onResult(Decision decision) {
+                    state.copyFrom(work);
+                    onBackgroundLocationPermissionDecision(decision);
                 }
-                // If showRequestReasonDialog or showForwardToSettingsDialog is not called. We should finish the task.
-                // There's case that ExplainReasonCallback or ForwardToSettingsCallback is called, but developer didn't invoke
-                // showRequestReasonDialog or showForwardToSettingsDialog in the callback.
-                // At this case and all other cases, task should be finished.
-                if (goesToRequestCallback || !pb.showDialogCalled) {
-                    task.finish();
-                }
-            }
+            }));
         }
     }
 
     /**
-     * Handle result of SYSTEM_ALERT_WINDOW permission request.
+     * Notify the callbacks about the decision on the result of ACCESS_BACKGROUND_LOCATION permission request.
      */
-    private void onRequestSystemAlertWindowPermissionResult() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (Settings.canDrawOverlays(getContext())) {
-                task.finish();
-            } else if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
+    private void onBackgroundLocationPermissionDecision(Decision decision) {
+        if (checkForGC()) {
+            if (decision == Decision.EXPLAIN_REASON) {
+                List<String> permissionsToExplain = new ArrayList<>();
+                permissionsToExplain.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
                 if (pb.explainReasonCallbackWithBeforeParam != null) {
                     // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(),
-                            Collections.singletonList(Manifest.permission.SYSTEM_ALERT_WINDOW), false);
+                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(), permissionsToExplain, false);
                 } else {
-                    pb.explainReasonCallback.onExplainReason(task.getExplainScope(),
-                            Collections.singletonList(Manifest.permission.SYSTEM_ALERT_WINDOW));
+                    pb.explainReasonCallback.onExplainReason(task.getExplainScope(), permissionsToExplain);
                 }
+            } else if (decision == Decision.FORWARD_TO_SETTINGS) {
+                List<String> permissionsToForward = new ArrayList<>();
+                permissionsToForward.add(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
+                pb.forwardToSettingsCallback.onForwardToSettings(task.getForwardScope(), permissionsToForward);
             }
-        } else {
+            // If showRequestReasonDialog or showForwardToSettingsDialog is not called. We should finish the task.
+            // There's case that ExplainReasonCallback or ForwardToSettingsCallback is called, but developer didn't invoke
+            // showRequestReasonDialog or showForwardToSettingsDialog in the callback.
+            // At this case and all other cases, task should be finished.
+            if (decision == Decision.FINISH || !pb.showDialogCalled) {
+                task.finish();
+            }
+        }
+    }
+
+    /**
+     * Handle result of a special permission request when user switched back from the Settings page of its handler.
+     */
+    private void onRequestSpecialPermissionResult(final SpecialPermissionHandler handler, final int resultCode, final Intent data) {
+        final Context context = getContext();
+        SystemCalls.run(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return handler.parseResult(context, resultCode, data);
+            }
+        }, pb.whileAlive(new SystemCalls.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean granted) {
+                onSpecialPermissionChecked(handler, granted);
+            }
+        }));
+    }
+
+    /**
+     * Continue with the grant state of a special permission after user switched back.
+     */
+    private void onSpecialPermissionChecked(SpecialPermissionHandler handler, boolean granted) {
+        if (!checkForGC()) {
+            return;
+        }
+        if (granted) {
             task.finish();
+        } else if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
+            if (pb.explainReasonCallbackWithBeforeParam != null) {
+                // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
+                pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(),
+                        Collections.singletonList(handler.getPermission()), false);
+            } else {
+                pb.explainReasonCallback.onExplainReason(task.getExplainScope(),
+                        Collections.singletonList(handler.getPermission()));
+            }
         }
     }
 
     /**
-     * Handle result of WRITE_SETTINGS permission request.
+     * Watch the app op of a special permission while its Settings page is open. As soon as user allows it, the request
+     * goes on without waiting for user to switch back, and the result of the Settings page is ignored when it comes.
+     *
+     * @param requestCode The request code the Settings page was started with.
+     * @param op          The app op behind the permission.
+     * @param permission  The permission to check when the op changes.
      */
-    private void onRequestWriteSettingsPermissionResult() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (Settings.System.canWrite(getContext())) {
-                task.finish();
-            } else if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
-                if (pb.explainReasonCallbackWithBeforeParam != null) {
-                    // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(),
-                            Collections.singletonList(Manifest.permission.WRITE_SETTINGS), false);
-                } else {
-                    pb.explainReasonCallback.onExplainReason(task.getExplainScope(),
-                            Collections.singletonList(Manifest.permission.WRITE_SETTINGS));
+    private void watchSettingsOp(final int requestCode, String op, final String permission) {
+        stopWatchingSettingsOp();
+        opWatcher = SettingsOpWatcher.start(getContext(), op, new Runnable() {
+            @Override
+            public void run() {
+                if (pb == null) {
+                    return;
                 }
+                checkGranted(permission, new SystemCalls.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean granted) {
+                        // The op may be turned off again, and user may have switched back while we checked.
+                        if (granted && opWatcher != null && awaitingResult && checkForGC()) {
+                            onSettingsOpAllowed(requestCode);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Go on with the request when user allowed the permission of the Settings page with requestCode.
+     */
+    private void onSettingsOpAllowed(int requestCode) {
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("App op of Settings page " + requestCode + " allowed, continue without waiting for user to switch back");
+        }
+        stopWatchingSettingsOp();
+        awaitingResult = false;
+        settingsHop = 0;
+        resultHandledEarly = requestCode;
+        FlightRecorder.record(FlightRecorder.SETTINGS_RETURN, pb.token, requestCode, "op");
+        if (pb.returnFromSettingsWhenGranted) {
+            returnFromSettings();
+        }
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            SpecialPermissionHandler handler = SpecialPermissionHandlers.forRequestCode(requestCode);
+            if (handler != null) {
+                onSpecialPermissionChecked(handler, true);
             }
         } else {
-            task.finish();
+            // The host is stopped under the Settings page with its state saved, and returnFromSettings() only asks to
+            // bring it back. Go on when it resumes.
+            allowedWhileStopped = requestCode;
         }
     }
 
     /**
-     * Handle result of MANAGE_EXTERNAL_STORAGE permission request.
+     * Go on with the request whose Settings page permission user allowed while the host was stopped, now the host resumed.
      */
-    private void onRequestManageExternalStoragePermissionResult() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            if (Environment.isExternalStorageManager()) {
-                task.finish();
-            } else if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
-                if (pb.explainReasonCallbackWithBeforeParam != null) {
-                    // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(task.getExplainScope(),
-                            Collections.singletonList(Manifest.permission.MANAGE_EXTERNAL_STORAGE), false);
-                } else {
-                    pb.explainReasonCallback.onExplainReason(task.getExplainScope(),
-                            Collections.singletonList(Manifest.permission.MANAGE_EXTERNAL_STORAGE));
+    private void continueAllowedWhileStopped() {
+        SpecialPermissionHandler handler = SpecialPermissionHandlers.forRequestCode(allowedWhileStopped);
+        allowedWhileStopped = 0;
+        if (pb != null && handler != null) {
+            onSpecialPermissionChecked(handler, true);
+        }
+    }
+
+    /**
+     * Ask the system to bring the host activity back to the front. This is asynchronous, the host is still stopped when
+     * it returns. The host is started with FLAG_ACTIVITY_CLEAR_TOP and FLAG_ACTIVITY_SINGLE_TOP, so if the Settings page
+     * runs in the task of the host it's finished, and if it runs in a task of its own that task stays behind. Either way
+     * the host receives this synthetic intent, which has no action or extras, in onNewIntent() instead of being created
+     * again, as long as it's the top of its task below the Settings page.
+     */
+    private void returnFromSettings() {
+        Activity activity = getActivity();
+        if (activity != null) {
+            Intent intent = new Intent(activity, activity.getClass());
+            intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            startActivity(intent);
+        }
+    }
+
+    /**
+     * Stop watching the app op of a special permission, if watching.
+     */
+    private void stopWatchingSettingsOp() {
+        if (opWatcher != null) {
+            opWatcher.stop();
+            opWatcher = null;
+        }
+    }
+
+    /**
+     * Remove this fragment from the host, unless a request uses it again or a saved request is waiting to continue here.
+     * The next request adds a new one.
+     */
+    private void detachIfIdle() {
+        FragmentManager fragmentManager = getFragmentManager();
+        if (pb != null || awaitingResult || savedCheckpoint != null || pendingResult != null
+                || fragmentManager == null || fragmentManager.isDestroyed() || !isAdded() || isRemoving()) {
+            return;
+        }
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Remove the idle InvisibleFragment");
+        }
+        fragmentManager.beginTransaction().remove(this).commitNowAllowingStateLoss();
+    }
+
+    /**
+     * Check if a permission is granted through {@link SystemCalls}, and continue with the answer on the main thread
+     * while the current request is alive.
+     */
+    private void checkGranted(final String permission, SystemCalls.Callback<Boolean> callback) {
+        final Context context = getContext();
+        SystemCalls.run(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return PermissionX.isGranted(context, permission);
+            }
+        }, pb.whileAlive(callback));
+    }
+
+    /**
+     * @return Token of the current request for {@link FlightRecorder}, or 0 if there's none.
+     */
+    private int token() {
+        return pb != null ? pb.token : 0;
+    }
+
+    private static int countGranted(int[] grantResults) {
+        int count = 0;
+        if (grantResults != null) {
+            for (int grantResult : grantResults) {
+                if (grantResult == PackageManager.PERMISSION_GRANTED) {
+                    count++;
                 }
             }
-        } else {
-            task.finish();
         }
+        return count;
     }
 
     /**
@@ -409,7 +921,10 @@ public class InvisibleFragment extends Fragment {
      */
     private boolean checkForGC() {
         if (pb == null || task == null) {
-            Log.w("PermissionX", "PermissionBuilder and ChainTask should not be null at this time, so we can do nothing in this case.");
+            if (PermissionXLog.isLoggable(Log.WARN)) {
+                PermissionXLog.w("PermissionBuilder and ChainTask should not be null at this time, so we can do nothing in this case.");
+            }
+            FlightRecorder.record(FlightRecorder.RESULT_DROPPED, token(), 0, "no request");
             return false;
         }
         return true;
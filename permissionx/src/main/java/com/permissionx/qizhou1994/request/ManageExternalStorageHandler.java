@@ -0,0 +1,65 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.Settings;
+
+import androidx.annotation.NonNull;
+
+import com.permissionx.qizhou1994.core.Permissions;
+
+/**
+ * Requests android.permission.MANAGE_EXTERNAL_STORAGE in Settings.ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION.
+ */
+final class ManageExternalStorageHandler extends SpecialPermissionHandler {
+
+    @NonNull
+    @Override
+    public String getPermission() {
+        return Permissions.MANAGE_EXTERNAL_STORAGE;
+    }
+
+    @Override
+    public boolean isGranted(@NonNull Context context) {
+        // There's no MANAGE_EXTERNAL_STORAGE permission below Android R.
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && Environment.isExternalStorageManager();
+    }
+
+    @TargetApi(Build.VERSION_CODES.R)
+    @NonNull
+    @Override
+    public Intent createIntent(@NonNull Context context) {
+        return new Intent(Settings.ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION);
+    }
+
+    @Override
+    public boolean isAvailable(@NonNull Context context) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+    }
+
+    @Override
+    public String getAppOp() {
+        return SettingsOpWatcher.OP_MANAGE_EXTERNAL_STORAGE;
+    }
+
+}
@@ -21,25 +21,41 @@ import android.app.Dialog;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.View;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentManager;
+import androidx.lifecycle.ViewModelStoreOwner;
 
 import com.permissionx.qizhou1994.callback.ExplainReasonCallback;
 import com.permissionx.qizhou1994.callback.ExplainReasonCallbackWithBeforeParam;
 import com.permissionx.qizhou1994.callback.ForwardToSettingsCallback;
 import com.permissionx.qizhou1994.callback.RequestCallback;
+import com.permissionx.qizhou1994.checker.LastKnownState;
+import com.permissionx.qizhou1994.checker.PermissionStateProvider;
+import com.permissionx.qizhou1994.checker.SystemCalls;
+import com.permissionx.qizhou1994.core.ChainExecutor;
+import com.permissionx.qizhou1994.core.Platform;
+import com.permissionx.qizhou1994.core.RequestResult;
+import com.permissionx.qizhou1994.core.RequestState;
+import com.permissionx.qizhou1994.core.RequestStateMachine;
+import com.permissionx.qizhou1994.core.StageGraph;
 import com.permissionx.qizhou1994.dialog.DefaultDialog;
 import com.permissionx.qizhou1994.dialog.RationaleDialog;
 import com.permissionx.qizhou1994.dialog.RationaleDialogFragment;
+import com.permissionx.qizhou1994.log.FlightRecorder;
+import com.permissionx.qizhou1994.log.PermissionXLog;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * More APIs for developers to control PermissionX functions.
@@ -54,6 +70,11 @@ public class PermissionBuilder {
      */
     private static final String FRAGMENT_TAG = "InvisibleFragment";
 
+    /**
+     * The request stages and their prerequisites, which decide the order of the tasks.
+     */
+    static final StageGraph STAGE_GRAPH = StageGraph.defaults();
+
     /**
      * Instance of activity for everything.
      */
@@ -70,15 +91,26 @@ public class PermissionBuilder {
     Dialog currentDialog;
 
     /**
-     * Normal runtime permissions that app want to request.
+     * The permission sets of this request. Request tasks and InvisibleFragment move permissions between them.
+     */
+    final RequestState state;
+
+    /**
+     * Runs the request tasks of this request in order. Created when {@link #request(RequestCallback)} is called.
+     */
+    ChainExecutor chain;
+
+    /**
+     * Indicates a rationale dialog is showing, or was showing when the host was recreated. The chain is paused meanwhile,
+     * so a stage that finishes doesn't start the next one under the dialog.
      */
-    Set<String> normalPermissions;
+    private boolean dialogShowing;
 
     /**
-     * Special permissions that we need to handle by special case.
-     * Such as SYSTEM_ALERT_WINDOW, WRITE_SETTINGS and MANAGE_EXTERNAL_STORAGE.
+     * Indicates the host is stopped. The chain is paused meanwhile, so the next stage doesn't request permissions, show a
+     * dialog or open a Settings page while the host can't.
      */
-    Set<String> specialPermissions;
+    private boolean hostStopped;
 
     /**
      * Indicates should PermissionX explain request reason before request.
@@ -86,53 +118,66 @@ public class PermissionBuilder {
     boolean explainReasonBeforeRequest = false;
 
     /**
-     * Indicates {@link ExplainScope#showRequestReasonDialog(List, String, String)} or {@link ForwardScope#showForwardToSettingsDialog(List, String, String)} is called in {@link #onExplainRequestReason(ExplainReasonCallback)} or {@link #onForwardToSettings(ForwardToSettingsCallback)} callback.
-     * If not called, requestCallback will be called by PermissionX automatically.
+     * Indicates should PermissionX send the already granted normal permissions to the system again with every request.
      */
-    boolean showDialogCalled = false;
+    boolean requestGrantedPermissionsAgain = false;
 
     /**
-     * The custom tint color to set on the DefaultDialog in light theme.
+     * Indicates should PermissionX bring the app back from the Settings page of a special permission as soon as user allows it.
      */
-    int lightColor = -1;
+    boolean returnFromSettingsWhenGranted = false;
 
     /**
-     * The custom tint color to set on the DefaultDialog in dark theme.
+     * Tells the events of this request in {@link FlightRecorder} from the others.
      */
-    int darkColor = -1;
+    final int token = FlightRecorder.nextToken();
 
     /**
-     * Some permissions shouldn't request will be stored here. And notify back to user when request finished.
+     * Key of this request in {@link PermissionRequestViewModel} while it's in flight.
      */
-    Set<String> permissionsWontRequest = new LinkedHashSet<>();
+    String inFlightKey;
 
     /**
-     * Holds permissions that have already granted in the requested permissions.
+     * The DefaultDialog that is showing, kept so it can be shown again after a configuration change. Maybe null.
      */
-    Set<String> grantedPermissions = new LinkedHashSet<>();
+    PendingDialog pendingDialog;
 
     /**
-     * Holds permissions that have been denied in the requested permissions.
+     * The key set by {@link #setRequestKey(String)}. If not null, the request is saved when the process may be killed. Maybe null.
      */
-    Set<String> deniedPermissions = new LinkedHashSet<>();
+    String requestKey;
 
     /**
-     * Holds permissions that have been permanently denied in the requested permissions. (Deny and never ask again)
+     * Grant state of the requested permissions, checked ahead of the tasks. Null once PermissionX asks the user for anything.
      */
-    Set<String> permanentDeniedPermissions = new LinkedHashSet<>();
+    GrantStatePrefetch prefetch;
 
     /**
-     * When we request multiple permissions. Some are denied, some are permanently denied. Denied permissions will be callback first.
-     * And the permanently denied permissions will store in this tempPermanentDeniedPermissions. They will be callback once no more
-     * denied permissions exist.
+     * Indicates {@link #release()} is called. Results of system calls that come back after that are dropped.
      */
-    Set<String> tempPermanentDeniedPermissions = new LinkedHashSet<>();
+    private boolean released;
 
     /**
-     * Holds permissions which should forward to Settings to allow them.
-     * Not all permanently denied permissions should forward to Settings. Only the ones developer think they are necessary should.
+     * Results of system calls that came back while the host was recreated by a configuration change. They continue the
+     * request once it is reattached to the recreated host. Maybe null.
+     */
+    private List<Runnable> pendingContinuations;
+
+    /**
+     * Indicates {@link ExplainScope#showRequestReasonDialog(List, String, String)} or {@link ForwardScope#showForwardToSettingsDialog(List, String, String)} is called in {@link #onExplainRequestReason(ExplainReasonCallback)} or {@link #onForwardToSettings(ForwardToSettingsCallback)} callback.
+     * If not called, requestCallback will be called by PermissionX automatically.
      */
-    Set<String> forwardPermissions = new LinkedHashSet<>();
+    boolean showDialogCalled = false;
+
+    /**
+     * The custom tint color to set on the DefaultDialog in light theme.
+     */
+    int lightColor = -1;
+
+    /**
+     * The custom tint color to set on the DefaultDialog in dark theme.
+     */
+    int darkColor = -1;
 
     /**
      * The callback for {@link #request(RequestCallback)} method. Can not be null.
@@ -162,14 +207,23 @@ public class PermissionBuilder {
                              Fragment fragment,
                              Set<String> normalPermissions,
                              Set<String> specialPermissions) {
+        this(activity, fragment, new RequestState(normalPermissions, specialPermissions));
+    }
+
+    public PermissionBuilder(FragmentActivity activity,
+                             Fragment fragment,
+                             RequestState state) {
         // activity and fragment must not be null at same time
         this.activity = activity;
         this.fragment = fragment;
         if (activity == null && fragment != null) {
             this.activity = fragment.getActivity();
         }
-        this.normalPermissions = normalPermissions;
-        this.specialPermissions = specialPermissions;
+        this.state = state;
+        if (SystemCalls.isOffMainThread()) {
+            // Check the grant state while the caller is still chaining the callbacks. On the main thread it would cost the same as checking in the tasks.
+            prefetch = GrantStatePrefetch.start(this.activity, getPrefetchPermissions());
+        }
     }
 
     /**
@@ -224,6 +278,47 @@ public class PermissionBuilder {
         return this;
     }
 
+    /**
+     * By default only the normal permissions that are not granted yet are sent to the system, and the granted ones are
+     * checked again in one batch when the result comes back. Chain this method to send all of them with every request,
+     * as PermissionX did before, in case a device handles the smaller request differently.
+     *
+     * @return PermissionBuilder itself.
+     */
+    public PermissionBuilder requestGrantedPermissionsAgain() {
+        requestGrantedPermissionsAgain = true;
+        return this;
+    }
+
+    /**
+     * SYSTEM_ALERT_WINDOW, WRITE_SETTINGS and MANAGE_EXTERNAL_STORAGE are allowed in a Settings page. PermissionX notices
+     * as soon as user allows them there, but the Settings page stays open until user switches back, and the request goes
+     * on when your activity resumes. Chain this method to ask the system to bring your activity back to the front at that
+     * moment. Your activity receives a synthetic intent without action or extras in onNewIntent() instead of being
+     * created again, so ignore it there.
+     *
+     * @return PermissionBuilder itself.
+     */
+    public PermissionBuilder returnFromSettingsWhenGranted() {
+        returnFromSettingsWhenGranted = true;
+        return this;
+    }
+
+    /**
+     * Give this request a key, so it can continue after the system kills the app process, for example while user is in Settings.
+     * <p>
+     * The request is saved with the key. When the activity is recreated, run the same request with the same key
+     * and callbacks again, usually in onCreate. The saved request continues from where it was instead of starting over,
+     * and the result comes to the new callbacks.
+     *
+     * @param requestKey A key that is unique among the requests of the activity and stays the same across process restarts.
+     * @return PermissionBuilder itself.
+     */
+    public PermissionBuilder setRequestKey(String requestKey) {
+        this.requestKey = requestKey;
+        return this;
+    }
+
     /**
      * Set the tint color to the default rationale dialog.
      * @param lightColor
@@ -245,16 +340,287 @@ public class PermissionBuilder {
      */
     public void request(RequestCallback callback) {
         requestCallback = callback;
-        // Build the request chain.
-        // RequestNormalPermissions runs first.
-        // Then RequestBackgroundLocationPermission runs.
-        RequestChain requestChain = new RequestChain();
-        requestChain.addTaskToChain(new RequestNormalPermissions(this));
-        requestChain.addTaskToChain(new RequestBackgroundLocationPermission(this));
-        requestChain.addTaskToChain(new RequestSystemAlertWindowPermission(this));
-        requestChain.addTaskToChain(new RequestWriteSettingsPermission(this));
-        requestChain.addTaskToChain(new RequestManageExternalStoragePermission(this));
-        requestChain.runTask();
+        PermissionRequestViewModel viewModel = getViewModel();
+        String key = requestKey != null ? requestKey : state.normalPermissions + "|" + state.specialPermissions;
+        PermissionBuilder inFlight = viewModel.get(key);
+        if (inFlight != null && inFlight != this && inFlight.activity != activity
+                && inFlight.chain != null && inFlight.chain.getStatus() != ChainExecutor.Status.FINISHED) {
+            // The host is recreated by a configuration change while the same request is in flight. Continue that one.
+            inFlight.reattach(this);
+            return;
+        }
+        inFlightKey = key;
+        viewModel.put(key, this);
+        FlightRecorder.record(FlightRecorder.REQUEST, token, 0, key);
+        if (requestKey != null && getInvisibleFragment().continueFromCheckpoint(this)) {
+            // This request was saved before the process was killed, and it continues from there.
+            return;
+        }
+        chain = newChain();
+        chain.start();
+    }
+
+    /**
+     * Move this request in flight to the recreated host, and take the callbacks of the request that runs again.
+     * The chain isn't restarted and the system isn't asked again. The DefaultDialog that was showing is shown again.
+     *
+     * @param builder The same request built again by the recreated host.
+     */
+    private void reattach(PermissionBuilder builder) {
+        activity = builder.activity;
+        fragment = builder.fragment;
+        requestCallback = builder.requestCallback;
+        explainReasonCallback = builder.explainReasonCallback;
+        explainReasonCallbackWithBeforeParam = builder.explainReasonCallbackWithBeforeParam;
+        forwardToSettingsCallback = builder.forwardToSettingsCallback;
+        boolean resultOnTheWay = getInvisibleFragment().reattach(this);
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Reattach request " + inFlightKey + " at " + chain);
+        }
+        if (pendingContinuations != null) {
+            // A system call came back while the host was recreated. Continue with its result now.
+            List<Runnable> continuations = pendingContinuations;
+            pendingContinuations = null;
+            for (Runnable continuation : continuations) {
+                continuation.run();
+            }
+        } else if (pendingDialog != null) {
+            PendingDialog dialog = pendingDialog;
+            showHandlePermissionDialog(dialog.chainTask, dialog.showReasonOrGoSettings, dialog.permissions, dialog.message,
+                    dialog.positiveText, dialog.negativeText, dialog.onCancelListener);
+        } else if (!resultOnTheWay && dialogShowing) {
+            // A custom dialog was showing. It belongs to the destroyed host and can't be shown again, so let the chain move on.
+            onDialogGone();
+            ((ChainTask) chain.getCurrentStage()).finish();
+        }
+    }
+
+    /**
+     * Pause the chain while a rationale dialog is showing.
+     */
+    private void onDialogShown() {
+        dialogShowing = true;
+        updateChainPaused();
+    }
+
+    /**
+     * Let the chain move on once user answered or dismissed the rationale dialog.
+     */
+    private void onDialogGone() {
+        dialogShowing = false;
+        updateChainPaused();
+    }
+
+    /**
+     * Called by InvisibleFragment when the host stops or starts, and when it takes over this request.
+     *
+     * @param stopped True if the host is stopped.
+     */
+    void setHostStopped(boolean stopped) {
+        hostStopped = stopped;
+        updateChainPaused();
+    }
+
+    /**
+     * Pause the chain while a dialog is showing or the host is stopped, and resume it when neither is the case anymore.
+     * A stage that finishes while paused is held, and the next stage runs when the chain resumes.
+     */
+    private void updateChainPaused() {
+        if (chain == null) {
+            return;
+        }
+        if (dialogShowing || hostStopped) {
+            chain.pause();
+        } else {
+            chain.resume();
+        }
+    }
+
+    /**
+     * Get the ViewModel that keeps the requests in flight of the host.
+     *
+     * @return The ViewModel of the fragment if the request is from a fragment, or the ViewModel of the activity.
+     */
+    private PermissionRequestViewModel getViewModel() {
+        ViewModelStoreOwner owner = fragment != null ? fragment : activity;
+        return PermissionRequestViewModel.of(owner);
+    }
+
+    /**
+     * Build the request chain.
+     * RequestNormalPermissions runs first.
+     * Then RequestBackgroundLocationPermission runs.
+     *
+     * @return The chain of this request, not started yet.
+     */
+    ChainExecutor newChain() {
+        final List<String> order = STAGE_GRAPH.order();
+        final ChainExecutor.Stage[] stages = new ChainExecutor.Stage[order.size()];
+        for (int i = 0; i < stages.length; i++) {
+            String stage = order.get(i);
+            // Only the stages of this request get a task. The others keep their index, so saved requests still match.
+            if (StageGraph.NORMAL_PERMISSIONS.equals(stage) || state.specialPermissions.contains(stage)) {
+                stages[i] = newTask(stage);
+            }
+        }
+        return new ChainExecutor(stages, new ChainExecutor.Gate() {
+            @Override
+            public boolean shouldRun(int index) {
+                String stage = order.get(index);
+                boolean run;
+                if (StageGraph.NORMAL_PERMISSIONS.equals(stage)) {
+                    run = !state.normalPermissions.isEmpty();
+                } else {
+                    // Skip a special permission that isn't requested, or can't be granted because its prerequisites are denied.
+                    run = stages[index] != null && state.specialPermissions.contains(stage) && !STAGE_GRAPH.isBlocked(stage, state);
+                }
+                if (run) {
+                    FlightRecorder.record(FlightRecorder.STAGE, token, index, stage);
+                }
+                return run;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                notifyResult();
+            }
+        });
+    }
+
+    /**
+     * Create the task of a stage in {@link #STAGE_GRAPH}.
+     */
+    private ChainTask newTask(String stage) {
+        switch (stage) {
+            case StageGraph.NORMAL_PERMISSIONS:
+                return new RequestNormalPermissions(this);
+            case RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION:
+                return new RequestBackgroundLocationPermission(this);
+            default:
+                SpecialPermissionHandler handler = SpecialPermissionHandlers.get(stage);
+                if (handler == null) {
+                    throw new IllegalStateException("No task for stage " + stage);
+                }
+                return new RequestSpecialPermission(this, handler);
+        }
+    }
+
+    /**
+     * Get the stage the request chain is at, for diagnostics.
+     *
+     * @return Description of the current stage and status, or null if {@link #request(RequestCallback)} is not called yet.
+     */
+    public String getCurrentStage() {
+        return chain != null ? chain.toString() : null;
+    }
+
+    /**
+     * All tasks are finished. Assemble the result and notify the callback.
+     */
+    private void notifyResult() {
+        if (inFlightKey != null) {
+            getViewModel().remove(inFlightKey, this);
+        }
+        final Platform platform = getPlatform();
+        final AndroidPermissionHost host = new AndroidPermissionHost(activity);
+        // The worker adds the granted special permissions to a copy. It's applied on the main thread, where the state is read.
+        final RequestState work = state.copy();
+        SystemCalls.run(new Callable<RequestResult>() {
+            @Override
+            public RequestResult call() {
+                return RequestStateMachine.assembleResult(work, platform, host);
+            }
+        }, whileAlive(new SystemCalls.Callback<RequestResult>() {
+            @Override
+            public void onResult(RequestResult result) {
+                state.copyFrom(work);
+                FlightRecorder.record(FlightRecorder.FINISH, token, result.allGranted ? 1 : 0);
+                if (requestCallback != null) {
+                    requestCallback.onResult(result.allGranted, result.grantedList, result.deniedList);
+                }
+                onRequestFinished();
+            }
+        }));
+    }
+
+    /**
+     * Wrap a callback of {@link SystemCalls}, so the result only continues this request while it's alive. The result is
+     * dropped if the request was finished or its host destroyed for good while the work ran. If the host is being
+     * recreated by a configuration change, the result waits until the request is reattached to the recreated host.
+     *
+     * @param callback Continues the request with the result, on the main thread.
+     * @return The callback to hand to {@link SystemCalls#run(Callable, SystemCalls.Callback)}.
+     */
+    <T> SystemCalls.Callback<T> whileAlive(final SystemCalls.Callback<T> callback) {
+        return new SystemCalls.Callback<T>() {
+            @Override
+            public void onResult(final T result) {
+                if (released || (activity != null && isHostDestroyed() && !activity.isChangingConfigurations())) {
+                    FlightRecorder.record(FlightRecorder.RESULT_DROPPED, token, 0, "stale");
+                    return;
+                }
+                if (activity == null || isHostDestroyed()) {
+                    if (pendingContinuations == null) {
+                        pendingContinuations = new ArrayList<>(1);
+                    }
+                    pendingContinuations.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            onResult(result);
+                        }
+                    });
+                    return;
+                }
+                callback.onResult(result);
+            }
+        };
+    }
+
+    /**
+     * Check if the host can't run fragment transactions anymore.
+     *
+     * @return True if the host fragment is detached, or the FragmentManager of the host is destroyed.
+     */
+    private boolean isHostDestroyed() {
+        if (fragment != null) {
+            return !fragment.isAdded() || fragment.getChildFragmentManager().isDestroyed();
+        }
+        return activity.getSupportFragmentManager().isDestroyed();
+    }
+
+    /**
+     * The result is delivered. Let InvisibleFragment forget this request and release everything it holds, so a finished
+     * request doesn't keep the host alive until InvisibleFragment is destroyed.
+     */
+    private void onRequestFinished() {
+        if (activity != null) {
+            Fragment invisibleFragment = getFragmentManager().findFragmentByTag(FRAGMENT_TAG);
+            if (invisibleFragment != null) {
+                ((InvisibleFragment) invisibleFragment).onRequestFinished(this);
+            }
+        }
+        pendingDialog = null;
+        release();
+        PermissionStateProvider.refreshIfRunning();
+        LastKnownState.refreshIfLoaded();
+    }
+
+    /**
+     * Drop the references to the host, the callbacks and the dialog. The callbacks are usually anonymous classes that
+     * capture the host. Called when the request is finished, and when the host is destroyed for good while the request is
+     * in flight. The permission sets and the chain are kept for diagnostics.
+     */
+    void release() {
+        released = true;
+        pendingContinuations = null;
+        activity = null;
+        fragment = null;
+        currentDialog = null;
+        prefetch = null;
+        requestCallback = null;
+        explainReasonCallback = null;
+        explainReasonCallbackWithBeforeParam = null;
+        forwardToSettingsCallback = null;
     }
 
     /**
@@ -270,13 +636,15 @@ public class PermissionBuilder {
      * @param negativeText           Negative text on the negative button. Maybe null if this dialog should not be canceled.
      */
     void showHandlePermissionDialog(final ChainTask chainTask, final boolean showReasonOrGoSettings, final List<String> permissions, String message, String positiveText, String negativeText) {
-        DefaultDialog defaultDialog = new DefaultDialog(activity, permissions, message, positiveText, negativeText, lightColor, darkColor);
-        showHandlePermissionDialog(chainTask, showReasonOrGoSettings, defaultDialog);
+        showHandlePermissionDialog(chainTask, showReasonOrGoSettings, permissions, message, positiveText, negativeText, null);
     }
 
     void showHandlePermissionDialog(final ChainTask chainTask, final boolean showReasonOrGoSettings, final List<String> permissions, String message, String positiveText, String negativeText, DialogInterface.OnCancelListener onCancelListener) {
         DefaultDialog defaultDialog = new DefaultDialog(activity, permissions, message, positiveText, negativeText, lightColor, darkColor);
         showHandlePermissionDialog(chainTask, showReasonOrGoSettings, defaultDialog,onCancelListener);
+        if (currentDialog == defaultDialog) {
+            pendingDialog = new PendingDialog(chainTask, showReasonOrGoSettings, permissions, message, positiveText, negativeText, onCancelListener);
+        }
     }
 
     /**
@@ -290,6 +658,7 @@ public class PermissionBuilder {
      */
     public boolean cancel = true;
     void showHandlePermissionDialog(final ChainTask chainTask, final boolean showReasonOrGoSettings, @NonNull final RationaleDialog dialog, DialogInterface.OnCancelListener onCancelListener) {
+        pendingDialog = null;
 
         final List<String> permissions = dialog.getPermissionsToRequest();
         if (permissions.isEmpty()) {
@@ -298,6 +667,8 @@ public class PermissionBuilder {
         }
         currentDialog = dialog;
         dialog.show();
+        onDialogShown();
+        FlightRecorder.record(FlightRecorder.DIALOG_SHOW, token, showReasonOrGoSettings ? 1 : 0, permissions.toArray(new String[0]));
         View positiveButton = dialog.getPositiveButton();
         View negativeButton = dialog.getNegativeButton();
         dialog.setCancelable(cancel);
@@ -309,7 +680,10 @@ public class PermissionBuilder {
         positiveButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
+                pendingDialog = null;
+                FlightRecorder.record(FlightRecorder.DIALOG_CLICK, token, 1);
                 dialog.dismiss();
+                onDialogGone();
                 if (showReasonOrGoSettings) {
                     chainTask.requestAgain(permissions);
                 } else {
@@ -322,7 +696,10 @@ public class PermissionBuilder {
             negativeButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
+                    pendingDialog = null;
+                    FlightRecorder.record(FlightRecorder.DIALOG_CLICK, token, 0);
                     dialog.dismiss();
+                    onDialogGone();
                     chainTask.finish();
                 }
             });
@@ -330,12 +707,23 @@ public class PermissionBuilder {
         currentDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
             @Override
             public void onDismiss(DialogInterface dialogInterface) {
+                FlightRecorder.record(FlightRecorder.DIALOG_DISMISS, token, 0);
+                if (currentDialog != dialog) {
+                    // Another dialog is showing now, e.g. the one shown again after a configuration change.
+                    return;
+                }
                 currentDialog = null;
+                if (activity != null && !activity.isChangingConfigurations()) {
+                    // Dismissed by user, not by a configuration change. Don't show it again.
+                    pendingDialog = null;
+                    onDialogGone();
+                }
             }
         });
     }
     void showHandlePermissionDialog(final ChainTask chainTask, final boolean showReasonOrGoSettings, @NonNull final RationaleDialog dialog) {
 //        showDialogCalled = true;
+        pendingDialog = null;
         final List<String> permissions = dialog.getPermissionsToRequest();
         if (permissions.isEmpty()) {
             chainTask.finish();
@@ -343,6 +731,8 @@ public class PermissionBuilder {
         }
         currentDialog = dialog;
         dialog.show();
+        onDialogShown();
+        FlightRecorder.record(FlightRecorder.DIALOG_SHOW, token, showReasonOrGoSettings ? 1 : 0, permissions.toArray(new String[0]));
         View positiveButton = dialog.getPositiveButton();
         View negativeButton = dialog.getNegativeButton();
         dialog.setCancelable(cancel);
@@ -351,7 +741,10 @@ public class PermissionBuilder {
         positiveButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
+                pendingDialog = null;
+                FlightRecorder.record(FlightRecorder.DIALOG_CLICK, token, 1);
                 dialog.dismiss();
+                onDialogGone();
                 if (showReasonOrGoSettings) {
                     chainTask.requestAgain(permissions);
                 } else {
@@ -364,7 +757,10 @@ public class PermissionBuilder {
             negativeButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
+                    pendingDialog = null;
+                    FlightRecorder.record(FlightRecorder.DIALOG_CLICK, token, 0);
                     dialog.dismiss();
+                    onDialogGone();
                     chainTask.finish();
                 }
             });
@@ -372,7 +768,17 @@ public class PermissionBuilder {
         currentDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
             @Override
             public void onDismiss(DialogInterface dialogInterface) {
+                FlightRecorder.record(FlightRecorder.DIALOG_DISMISS, token, 0);
+                if (currentDialog != dialog) {
+                    // Another dialog is showing now, e.g. the one shown again after a configuration change.
+                    return;
+                }
                 currentDialog = null;
+                if (activity != null && !activity.isChangingConfigurations()) {
+                    // Dismissed by user, not by a configuration change. Don't show it again.
+                    pendingDialog = null;
+                    onDialogGone();
+                }
             }
         });
     }
@@ -388,12 +794,15 @@ public class PermissionBuilder {
      */
     void showHandlePermissionDialog(final ChainTask chainTask, final boolean showReasonOrGoSettings, @NonNull final RationaleDialogFragment dialogFragment) {
 //        showDialogCalled = true;
+        pendingDialog = null;
         final List<String> permissions = dialogFragment.getPermissionsToRequest();
         if (permissions.isEmpty()) {
             chainTask.finish();
             return;
         }
         dialogFragment.showNow(getFragmentManager(), "PermissionXRationaleDialogFragment");
+        onDialogShown();
+        FlightRecorder.record(FlightRecorder.DIALOG_SHOW, token, showReasonOrGoSettings ? 1 : 0, permissions.toArray(new String[0]));
         View positiveButton = dialogFragment.getPositiveButton();
         View negativeButton = dialogFragment.getNegativeButton();
         dialogFragment.setCancelable(cancel);
@@ -401,7 +810,9 @@ public class PermissionBuilder {
         positiveButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
+                FlightRecorder.record(FlightRecorder.DIALOG_CLICK, token, 1);
                 dialogFragment.dismiss();
+                onDialogGone();
                 if (showReasonOrGoSettings) {
                     chainTask.requestAgain(permissions);
                 } else {
@@ -414,7 +825,9 @@ public class PermissionBuilder {
             negativeButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
+                    FlightRecorder.record(FlightRecorder.DIALOG_CLICK, token, 0);
                     dialogFragment.dismiss();
+                    onDialogGone();
                     chainTask.finish();
                 }
             });
@@ -428,6 +841,7 @@ public class PermissionBuilder {
      * @param chainTask   Instance of current task.
      */
     void requestNow(Set<String> permissions, ChainTask chainTask) {
+        prefetch = null;
         getInvisibleFragment().requestNow(this, permissions, chainTask);
     }
 
@@ -437,34 +851,19 @@ public class PermissionBuilder {
      * @param chainTask Instance of current task.
      */
     void requestAccessBackgroundLocationNow(ChainTask chainTask) {
+        prefetch = null;
         getInvisibleFragment().requestAccessBackgroundLocationNow(this, chainTask);
     }
 
     /**
-     * Request SYSTEM_ALERT_WINDOW permission at once in the fragment.
-     *
-     * @param chainTask Instance of current task.
-     */
-    void requestSystemAlertWindowPermissionNow(ChainTask chainTask) {
-        getInvisibleFragment().requestSystemAlertWindowPermissionNow(this, chainTask);
-    }
-
-    /**
-     * Request WRITE_SETTINGS permission at once in the fragment.
-     *
-     * @param chainTask Instance of current task.
-     */
-    void requestWriteSettingsPermissionNow(ChainTask chainTask) {
-        getInvisibleFragment().requestWriteSettingsPermissionNow(this, chainTask);
-    }
-
-    /**
-     * Request MANAGE_EXTERNAL_STORAGE permission at once in the fragment.
+     * Request a special permission at once in the fragment, in the Settings page of its handler.
      *
+     * @param handler   The handler of the permission.
      * @param chainTask Instance of current task.
      */
-    void requestManageExternalStoragePermissionNow(ChainTask chainTask) {
-        getInvisibleFragment().requestManageExternalStoragePermissionNow(this, chainTask);
+    void requestSpecialPermissionNow(SpecialPermissionHandler handler, ChainTask chainTask) {
+        prefetch = null;
+        getInvisibleFragment().requestSpecialPermissionNow(this, handler, chainTask);
     }
 
     /**
@@ -473,43 +872,25 @@ public class PermissionBuilder {
      * @return True if specialPermissions contains ACCESS_BACKGROUND_LOCATION permission, false otherwise.
      */
     boolean shouldRequestBackgroundLocationPermission() {
-        return specialPermissions.contains(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
-    }
-
-    /**
-     * Should we request SYSTEM_ALERT_WINDOW permission or not.
-     *
-     * @return True if specialPermissions contains SYSTEM_ALERT_WINDOW permission, false otherwise.
-     */
-    boolean shouldRequestSystemAlertWindowPermission() {
-        return specialPermissions.contains(Manifest.permission.SYSTEM_ALERT_WINDOW);
+        return state.specialPermissions.contains(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION);
     }
 
     /**
-     * Should we request WRITE_SETTINGS permission or not.
-     *
-     * @return True if specialPermissions contains WRITE_SETTINGS permission, false otherwise.
-     */
-    boolean shouldRequestWriteSettingsPermission() {
-        return specialPermissions.contains(Manifest.permission.WRITE_SETTINGS);
-    }
-
-    /**
-     * Should we request MANAGE_EXTERNAL_STORAGE permission or not.
+     * Get the targetSdkVersion of current app.
      *
-     * @return True if specialPermissions contains MANAGE_EXTERNAL_STORAGE permission, false otherwise.
+     * @return The targetSdkVersion of current app.
      */
-    boolean shouldRequestManageExternalStoragePermission() {
-        return specialPermissions.contains(RequestManageExternalStoragePermission.MANAGE_EXTERNAL_STORAGE);
+    int getTargetSdkVersion() {
+        return activity.getApplicationInfo().targetSdkVersion;
     }
 
     /**
-     * Get the targetSdkVersion of current app.
+     * Get the device and app facts for the request state machine.
      *
-     * @return The targetSdkVersion of current app.
+     * @return Platform of current device and app.
      */
-    int getTargetSdkVersion() {
-        return activity.getApplicationInfo().targetSdkVersion;
+    Platform getPlatform() {
+        return new Platform(Build.VERSION.SDK_INT, getTargetSdkVersion());
     }
 
     /**
@@ -526,6 +907,19 @@ public class PermissionBuilder {
         return fragmentManager;
     }
 
+    /**
+     * Permissions whose grant state the tasks check. The background location task also checks fine and coarse location.
+     */
+    private String[] getPrefetchPermissions() {
+        Set<String> permissions = new LinkedHashSet<>(state.normalPermissions);
+        permissions.addAll(state.specialPermissions);
+        if (permissions.contains(RequestBackgroundLocationPermission.ACCESS_BACKGROUND_LOCATION)) {
+            permissions.add(Manifest.permission.ACCESS_FINE_LOCATION);
+            permissions.add(Manifest.permission.ACCESS_COARSE_LOCATION);
+        }
+        return permissions.toArray(new String[0]);
+    }
+
     /**
      * Get the invisible fragment in activity for request permissions.
      * If there is no invisible fragment, add one into activity.
@@ -549,12 +943,45 @@ public class PermissionBuilder {
      * @param permissions Permissions which are necessary.
      */
     private void forwardToSettings(List<String> permissions) {
-        forwardPermissions.clear();
-        forwardPermissions.addAll(permissions);
+        state.forwardPermissions.clear();
+        state.forwardPermissions.addAll(permissions);
         Intent intent = new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
         Uri uri = Uri.fromParts("package", activity.getPackageName(), null);
         intent.setData(uri);
-        getInvisibleFragment().startActivityForResult(intent, InvisibleFragment.FORWARD_TO_SETTINGS);
+        prefetch = null;
+        getInvisibleFragment().forwardToSettingsNow(intent);
+    }
+
+    /**
+     * What is needed to show a DefaultDialog again.
+     */
+    static class PendingDialog {
+
+        final ChainTask chainTask;
+
+        final boolean showReasonOrGoSettings;
+
+        final List<String> permissions;
+
+        final String message;
+
+        final String positiveText;
+
+        final String negativeText;
+
+        final DialogInterface.OnCancelListener onCancelListener;
+
+        PendingDialog(ChainTask chainTask, boolean showReasonOrGoSettings, List<String> permissions, String message,
+                      String positiveText, String negativeText, DialogInterface.OnCancelListener onCancelListener) {
+            this.chainTask = chainTask;
+            this.showReasonOrGoSettings = showReasonOrGoSettings;
+            this.permissions = permissions;
+            this.message = message;
+            this.positiveText = positiveText;
+            this.negativeText = negativeText;
+            this.onCancelListener = onCancelListener;
+        }
+
     }
 
-}
\ No newline at end of file
+}
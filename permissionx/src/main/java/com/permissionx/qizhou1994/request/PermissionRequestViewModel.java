@@ -0,0 +1,110 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * Keeps the requests in flight of an activity or fragment across configuration changes. When the host is recreated and
+ * the same request runs again, PermissionBuilder finds the one in flight here and continues it instead of starting over.
+ * The requests the recreated host doesn't run again by the time it resumes are released by InvisibleFragment.
+ */
+public class PermissionRequestViewModel extends ViewModel {
+
+    /**
+     * Requests in flight, by the key of each request.
+     */
+    private final Map<String, PermissionBuilder> inFlightRequests = new HashMap<>();
+
+    /**
+     * Get the ViewModel that keeps the requests in flight of a host.
+     * @param owner
+     *          The activity or fragment that requests permissions.
+     * @return The ViewModel of the host.
+     */
+    static PermissionRequestViewModel of(ViewModelStoreOwner owner) {
+        return new ViewModelProvider(owner, new ViewModelProvider.NewInstanceFactory()).get(PermissionRequestViewModel.class);
+    }
+
+    /**
+     * Get the request in flight with this key.
+     * @param key
+     *          Key of the request.
+     * @return The request in flight, or null if there's none.
+     */
+    PermissionBuilder get(String key) {
+        return inFlightRequests.get(key);
+    }
+
+    /**
+     * Hold a request until it finishes.
+     * @param key
+     *          Key of the request.
+     * @param permissionBuilder
+     *          The request.
+     */
+    void put(String key, PermissionBuilder permissionBuilder) {
+        inFlightRequests.put(key, permissionBuilder);
+    }
+
+    /**
+     * Release a finished request. Does nothing if another request holds this key now.
+     * @param key
+     *          Key of the request.
+     * @param permissionBuilder
+     *          The finished request.
+     */
+    void remove(String key, PermissionBuilder permissionBuilder) {
+        if (inFlightRequests.get(key) == permissionBuilder) {
+            inFlightRequests.remove(key);
+        }
+    }
+
+    /**
+     * Release the requests that lost their host to a configuration change and were not reattached to the recreated one.
+     * Their callbacks usually capture the destroyed host.
+     * @return True if any request was released.
+     */
+    boolean releaseDetached() {
+        boolean released = false;
+        Iterator<PermissionBuilder> iterator = inFlightRequests.values().iterator();
+        while (iterator.hasNext()) {
+            PermissionBuilder permissionBuilder = iterator.next();
+            if (permissionBuilder.activity == null) {
+                iterator.remove();
+                permissionBuilder.release();
+                released = true;
+            }
+        }
+        return released;
+    }
+
+    @Override
+    protected void onCleared() {
+        inFlightRequests.clear();
+    }
+
+}
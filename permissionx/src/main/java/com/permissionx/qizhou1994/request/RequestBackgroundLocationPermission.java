@@ -19,7 +19,7 @@ package com.permissionx.qizhou1994.request;
 import android.Manifest;
 import android.os.Build;
 
-import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.checker.SystemCalls;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,32 +46,46 @@ public class RequestBackgroundLocationPermission extends BaseTask {
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
                 // If app runs under Android Q, there's no ACCESS_BACKGROUND_LOCATION permissions.
                 // We remove it from request list, but will append it to the request callback as denied permission.
-                pb.specialPermissions.remove(ACCESS_BACKGROUND_LOCATION);
-                pb.permissionsWontRequest.add(ACCESS_BACKGROUND_LOCATION);
+                pb.state.specialPermissions.remove(ACCESS_BACKGROUND_LOCATION);
+                pb.state.permissionsWontRequest.add(ACCESS_BACKGROUND_LOCATION);
             }
-            if (PermissionX.isGranted(pb.activity, ACCESS_BACKGROUND_LOCATION)) {
-                // ACCESS_BACKGROUND_LOCATION has already granted, we can finish this task now.
-                finish();
-                return;
-            }
-            boolean accessFindLocationGranted = PermissionX.isGranted(pb.activity, Manifest.permission.ACCESS_FINE_LOCATION);
-            boolean accessCoarseLocationGranted = PermissionX.isGranted(pb.activity, Manifest.permission.ACCESS_COARSE_LOCATION);
-            if (accessFindLocationGranted || accessCoarseLocationGranted) {
-                if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
-                    List<String> requestList = new ArrayList<>();
-                    requestList.add(ACCESS_BACKGROUND_LOCATION);
-                    if (pb.explainReasonCallbackWithBeforeParam != null) {
-                        // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                        pb.explainReasonCallbackWithBeforeParam.onExplainReason(explainReasonScope, requestList, true);
-                    } else {
-                        pb.explainReasonCallback.onExplainReason(explainReasonScope, requestList);
-                    }
+            checkGranted(new String[]{ACCESS_BACKGROUND_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION,
+                    Manifest.permission.ACCESS_COARSE_LOCATION}, new SystemCalls.Callback<boolean[]>() {
+                @Override
+                public void onResult(boolean[] granted) {
+                    onGrantStateChecked(granted[0], granted[1], granted[2]);
+                }
+            });
+            return;
+        }
+        // Shouldn't request ACCESS_BACKGROUND_LOCATION at this time, so we call finish() to finish this task.
+        finish();
+    }
+
+    /**
+     * Continue the request with the grant state of background, fine and coarse location.
+     */
+    private void onGrantStateChecked(boolean accessBackgroundLocationGranted, boolean accessFindLocationGranted, boolean accessCoarseLocationGranted) {
+        if (accessBackgroundLocationGranted) {
+            // ACCESS_BACKGROUND_LOCATION has already granted, we can finish this task now.
+            finish();
+            return;
+        }
+        if (accessFindLocationGranted || accessCoarseLocationGranted) {
+            if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
+                List<String> requestList = new ArrayList<>();
+                requestList.add(ACCESS_BACKGROUND_LOCATION);
+                if (pb.explainReasonCallbackWithBeforeParam != null) {
+                    // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
+                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(explainReasonScope, requestList, true);
                 } else {
-                    // No implementation of explainReasonCallback, so we have to request ACCESS_BACKGROUND_LOCATION without explanation.
-                    requestAgain(null);
+                    pb.explainReasonCallback.onExplainReason(explainReasonScope, requestList);
                 }
-                return;
+            } else {
+                // No implementation of explainReasonCallback, so we have to request ACCESS_BACKGROUND_LOCATION without explanation.
+                requestAgain(null);
             }
+            return;
         }
         // Shouldn't request ACCESS_BACKGROUND_LOCATION at this time, so we call finish() to finish this task.
         finish();
@@ -1,78 +0,0 @@
-/*
- * Copyright (C) guolin, PermissionX Open Source Project
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.permissionx.qizhou1994.request;
-
-import android.os.Build;
-import android.os.Environment;
-
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * Implementation for request android.permission.MANAGE_EXTERNAL_STORAGE.
- *
- * @author guolin
- * @since 2021/3/1
- */
-public class RequestManageExternalStoragePermission extends BaseTask {
-
-    /**
-     * Define the const to compat with system lower than R.
-     */
-    public static final String MANAGE_EXTERNAL_STORAGE = "android.permission.MANAGE_EXTERNAL_STORAGE";
-
-    RequestManageExternalStoragePermission(PermissionBuilder permissionBuilder) {
-        super(permissionBuilder);
-    }
-
-    @Override
-    public void request() {
-        if (pb.shouldRequestManageExternalStoragePermission()
-                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            if (Environment.isExternalStorageManager()) {
-                // MANAGE_EXTERNAL_STORAGE permission has already granted, we can finish this task now.
-                finish();
-                return;
-            }
-            if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
-                List<String> requestList = new ArrayList<>();
-                requestList.add(MANAGE_EXTERNAL_STORAGE);
-                if (pb.explainReasonCallbackWithBeforeParam != null) {
-                    // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
-                    pb.explainReasonCallbackWithBeforeParam.onExplainReason(explainReasonScope, requestList, true);
-                } else {
-                    pb.explainReasonCallback.onExplainReason(explainReasonScope, requestList);
-                }
-            } else {
-                // No implementation of explainReasonCallback, we can't request
-                // MANAGE_EXTERNAL_STORAGE permission at this time, because user won't understand why.
-                finish();
-            }
-            return;
-        }
-        // shouldn't request MANAGE_EXTERNAL_STORAGE permission at this time, so we call finish()
-        // to finish this task.
-        finish();
-    }
-
-    @Override
-    public void requestAgain(List<String> permissions) {
-        // don't care what the permissions param is, always request WRITE_SETTINGS permission.
-        pb.requestManageExternalStoragePermissionNow(this);
-    }
-
-}
\ No newline at end of file
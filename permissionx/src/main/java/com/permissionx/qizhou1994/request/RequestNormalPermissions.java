@@ -16,7 +16,8 @@
 
 package com.permissionx.qizhou1994.request;
 
-import com.permissionx.qizhou1994.PermissionX;
+import com.permissionx.qizhou1994.checker.SystemCalls;
+import com.permissionx.qizhou1994.core.RequestPlanner;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -36,12 +37,25 @@ public class RequestNormalPermissions extends BaseTask {
 
     @Override
     public void request() {
+        final String[] permissions = pb.state.normalPermissions.toArray(new String[0]);
+        checkGranted(permissions, new SystemCalls.Callback<boolean[]>() {
+            @Override
+            public void onResult(boolean[] granted) {
+                onGrantStateChecked(permissions, granted);
+            }
+        });
+    }
+
+    /**
+     * Continue the request with the grant state of every normal permission.
+     */
+    private void onGrantStateChecked(String[] permissions, boolean[] granted) {
         List<String> requestList = new ArrayList<>();
-        for (String permission : pb.normalPermissions) {
-            if (PermissionX.isGranted(pb.activity, permission)) {
-                pb.grantedPermissions.add(permission); // already granted
+        for (int i = 0; i < permissions.length; i++) {
+            if (granted[i]) {
+                pb.state.grantedPermissions.add(permissions[i]); // already granted
             } else {
-                requestList.add(permission); // still need to request
+                requestList.add(permissions[i]); // still need to request
             }
         }
         if (requestList.isEmpty()) { // all permissions are granted
@@ -50,7 +64,7 @@ public class RequestNormalPermissions extends BaseTask {
         }
         if (pb.explainReasonBeforeRequest && (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null)) {
             pb.explainReasonBeforeRequest = false;
-            pb.deniedPermissions.addAll(requestList);
+            pb.state.deniedPermissions.addAll(requestList);
             if (pb.explainReasonCallbackWithBeforeParam != null) {
                 // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
                 pb.explainReasonCallbackWithBeforeParam.onExplainReason(explainReasonScope, requestList, true);
@@ -58,8 +72,13 @@ public class RequestNormalPermissions extends BaseTask {
                 pb.explainReasonCallback.onExplainReason(explainReasonScope, requestList);
             }
         } else {
-            // Do the request at once. Always request all permissions no matter they are already granted or not, in case user turn them off in Settings.
-            pb.requestNow(pb.normalPermissions, this);
+            if (pb.requestGrantedPermissionsAgain) {
+                // Do the request at once. Request all permissions no matter they are already granted or not, in case user turn them off in Settings.
+                pb.requestNow(pb.state.normalPermissions, this);
+            } else {
+                // Do the request at once with the ungranted permissions only. The granted ones are checked again with the result.
+                pb.requestNow(RequestPlanner.plan(pb.state, requestList, pb.getPlatform(), PermissionBuilder.STAGE_GRAPH), this);
+            }
         }
     }
 
@@ -70,9 +89,13 @@ public class RequestNormalPermissions extends BaseTask {
      */
     @Override
     public void requestAgain(List<String> permissions) {
-        Set<String> permissionsToRequestAgain = new HashSet<>(pb.grantedPermissions);
-        permissionsToRequestAgain.addAll(permissions);
-        pb.requestNow(permissionsToRequestAgain, this);
+        if (pb.requestGrantedPermissionsAgain) {
+            Set<String> permissionsToRequestAgain = new HashSet<>(pb.state.grantedPermissions);
+            permissionsToRequestAgain.addAll(permissions);
+            pb.requestNow(permissionsToRequestAgain, this);
+        } else {
+            pb.requestNow(RequestPlanner.plan(pb.state, permissions, pb.getPlatform(), PermissionBuilder.STAGE_GRAPH), this);
+        }
     }
 
 }
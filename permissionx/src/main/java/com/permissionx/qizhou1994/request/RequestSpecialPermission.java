@@ -0,0 +1,98 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.content.Context;
+
+import com.permissionx.qizhou1994.checker.SystemCalls;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation for request a special permission through its {@link SpecialPermissionHandler}.
+ * Every special permission in the request has its own instance, in the stage named after the permission.
+ */
+class RequestSpecialPermission extends BaseTask {
+
+    /**
+     * The handler that requests the permission of this task.
+     */
+    final SpecialPermissionHandler handler;
+
+    RequestSpecialPermission(PermissionBuilder permissionBuilder, SpecialPermissionHandler handler) {
+        super(permissionBuilder);
+        this.handler = handler;
+    }
+
+    @Override
+    public void request() {
+        String permission = handler.getPermission();
+        Context context = pb.activity;
+        if (!pb.state.specialPermissions.contains(permission) || !handler.isAvailable(context)) {
+            // shouldn't request this permission at this time, so we call finish() to finish this task.
+            finish();
+            return;
+        }
+        if (handler.isGrantedAutomatically(context)) {
+            pb.state.grantedPermissions.add(permission);
+            // At this time, this permission shouldn't be special treated anymore.
+            pb.state.specialPermissions.remove(permission);
+            finish();
+            return;
+        }
+        checkGranted(new String[]{permission}, new SystemCalls.Callback<boolean[]>() {
+            @Override
+            public void onResult(boolean[] granted) {
+                onGrantStateChecked(granted[0]);
+            }
+        });
+    }
+
+    /**
+     * Continue the request with the grant state of the permission.
+     */
+    private void onGrantStateChecked(boolean granted) {
+        if (granted) {
+            // The permission has already granted, we can finish this task now.
+            finish();
+            return;
+        }
+        if (pb.explainReasonCallback != null || pb.explainReasonCallbackWithBeforeParam != null) {
+            List<String> requestList = new ArrayList<>();
+            requestList.add(handler.getPermission());
+            if (pb.explainReasonCallbackWithBeforeParam != null) {
+                // callback ExplainReasonCallbackWithBeforeParam prior to ExplainReasonCallback
+                pb.explainReasonCallbackWithBeforeParam.onExplainReason(explainReasonScope, requestList, true);
+            } else {
+                pb.explainReasonCallback.onExplainReason(explainReasonScope, requestList);
+            }
+        } else {
+            // No implementation of explainReasonCallback, we can't request
+            // the permission at this time, because user won't understand why.
+            finish();
+        }
+    }
+
+    @Override
+    public void requestAgain(List<String> permissions) {
+        // don't care what the permissions param is, always request the permission of the handler.
+        pb.requestSpecialPermissionNow(handler, this);
+    }
+
+}
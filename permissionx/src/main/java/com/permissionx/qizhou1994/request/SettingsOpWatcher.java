@@ -0,0 +1,130 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.annotation.TargetApi;
+import android.app.AppOpsManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Watches the app op behind a special permission while its Settings page is open, so the request can go on as soon as
+ * user allows it, instead of waiting for user to switch back by hand.
+ * The system calls {@link #onOpChanged(String, String)} on a binder thread. The callback always runs on the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+final class SettingsOpWatcher implements AppOpsManager.OnOpChangedListener {
+
+    /**
+     * App op of SYSTEM_ALERT_WINDOW permission.
+     */
+    static final String OP_SYSTEM_ALERT_WINDOW = "android:system_alert_window";
+
+    /**
+     * App op of WRITE_SETTINGS permission.
+     */
+    static final String OP_WRITE_SETTINGS = "android:write_settings";
+
+    /**
+     * App op of MANAGE_EXTERNAL_STORAGE permission.
+     */
+    static final String OP_MANAGE_EXTERNAL_STORAGE = "android:manage_external_storage";
+
+    private final AppOpsManager appOps;
+
+    private final String op;
+
+    private final String packageName;
+
+    /**
+     * Runs on the main thread every time the op changes, until the watcher is stopped.
+     */
+    private final Runnable onChanged;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Only touched on the main thread.
+     */
+    private boolean stopped;
+
+    private SettingsOpWatcher(AppOpsManager appOps, String op, String packageName, Runnable onChanged) {
+        this.appOps = appOps;
+        this.op = op;
+        this.packageName = packageName;
+        this.onChanged = onChanged;
+    }
+
+    /**
+     * Start watching an app op of current app.
+     *
+     * @param context
+     *          Context of current app.
+     * @param op
+     *          The app op to watch.
+     * @param onChanged
+     *          Runs on the main thread every time the op changes. Check the grant state in it, the op may change either way.
+     * @return The started watcher, or null if the op can't be watched on this device.
+     */
+    static SettingsOpWatcher start(Context context, String op, Runnable onChanged) {
+        if (context == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return null;
+        }
+        AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        if (appOps == null) {
+            return null;
+        }
+        SettingsOpWatcher watcher = new SettingsOpWatcher(appOps, op, context.getPackageName(), onChanged);
+        try {
+            appOps.startWatchingMode(op, watcher.packageName, watcher);
+        } catch (RuntimeException e) {
+            // Some ROMs don't know the op or don't let apps watch it. User switching back still continues the request.
+            return null;
+        }
+        return watcher;
+    }
+
+    @Override
+    public void onOpChanged(String op, String packageName) {
+        if (!this.op.equals(op) || !this.packageName.equals(packageName)) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!stopped) {
+                    onChanged.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop watching the op. The callback doesn't run after this, even if a change is already on the way.
+     * Must be called on the main thread.
+     */
+    void stop() {
+        if (!stopped) {
+            stopped = true;
+            appOps.stopWatchingMode(this);
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Requests a special permission that user allows in a Settings page, instead of in the system permission dialog.
+ * PermissionX has handlers for SYSTEM_ALERT_WINDOW, WRITE_SETTINGS and MANAGE_EXTERNAL_STORAGE. Register your own with
+ * {@link com.permissionx.qizhou1994.PermissionX#registerSpecialPermissionHandler(SpecialPermissionHandler)} to request
+ * others, like REQUEST_INSTALL_PACKAGES or SCHEDULE_EXACT_ALARM, the same way.
+ * <p>
+ * {@link #isGranted(Context)} and {@link #parseResult(Context, int, Intent)} may run on the system call executor.
+ */
+public abstract class SpecialPermissionHandler {
+
+    /**
+     * Request code of the Settings page. Given by {@link SpecialPermissionHandlers} when the handler is registered.
+     */
+    int requestCode;
+
+    /**
+     * @return The permission this handler requests. Requests that contain it run this handler in their own stage.
+     */
+    @NonNull
+    public abstract String getPermission();
+
+    /**
+     * Check if the permission is granted.
+     *
+     * @param context Context of current app.
+     * @return True if the permission is granted.
+     */
+    public abstract boolean isGranted(@NonNull Context context);
+
+    /**
+     * @param context Context of current app.
+     * @return Intent of the Settings page where user allows the permission.
+     */
+    @NonNull
+    public abstract Intent createIntent(@NonNull Context context);
+
+    /**
+     * Check if the system grants the permission without asking, e.g. below the Android version that added its Settings page.
+     * The permission then counts as granted, and no Settings page is shown.
+     *
+     * @param context Context of current app.
+     * @return False by default.
+     */
+    public boolean isGrantedAutomatically(@NonNull Context context) {
+        return false;
+    }
+
+    /**
+     * Check if the permission exists on this device. If it doesn't, no Settings page is shown and it counts as denied,
+     * unless {@link #isGranted(Context)} says otherwise.
+     *
+     * @param context Context of current app.
+     * @return True by default.
+     */
+    public boolean isAvailable(@NonNull Context context) {
+        return true;
+    }
+
+    /**
+     * Read the result of the Settings page when user switches back. Some devices never deliver the result, then
+     * resultCode is {@link android.app.Activity#RESULT_CANCELED} and data is null.
+     *
+     * @param context    Context of current app.
+     * @param resultCode Result code of the Settings page.
+     * @param data       Result data of the Settings page. Maybe null.
+     * @return True if the permission is granted now. Checks {@link #isGranted(Context)} by default.
+     */
+    public boolean parseResult(@NonNull Context context, int resultCode, @Nullable Intent data) {
+        return isGranted(context);
+    }
+
+    /**
+     * @return The app op behind the permission, like "android:system_alert_window". While the Settings page is open,
+     *          PermissionX watches it and goes on as soon as user allows the permission. Null by default, then
+     *          PermissionX waits for user to switch back.
+     */
+    @Nullable
+    public String getAppOp() {
+        return null;
+    }
+
+    /**
+     * @return Permissions of which at least one must be granted before requesting this one. The stage of this handler
+     *          runs after the stages that request them, and it's skipped when all of them are denied. Empty by default.
+     */
+    @NonNull
+    public String[] getPrerequisites() {
+        return new String[0];
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.permissionx.qizhou1994.log.PermissionXLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is internal, and should not be used by developer.
+ * <p>
+ * The registered {@link SpecialPermissionHandler}s, by permission and by request code. Registering a handler adds its
+ * stage to {@link PermissionBuilder#STAGE_GRAPH}, so a request walks only the stages of the permissions it contains.
+ * <p>
+ * The maps are replaced on every registration and unregistration, so they can be read from the system call executor
+ * without a lock.
+ */
+public final class SpecialPermissionHandlers {
+
+    /**
+     * Request code of the first handler. The built-in handlers take the request codes InvisibleFragment defines for them.
+     */
+    private static final int FIRST_REQUEST_CODE = InvisibleFragment.ACTION_MANAGE_OVERLAY_PERMISSION;
+
+    private static volatile Map<String, SpecialPermissionHandler> byPermission = Collections.emptyMap();
+
+    /**
+     * Handler at index i has the request code FIRST_REQUEST_CODE + i.
+     */
+    private static volatile List<SpecialPermissionHandler> byRequestCode = Collections.emptyList();
+
+    /**
+     * The handlers PermissionX comes with, by permission. They take their permission back when it's unregistered.
+     */
+    private static final Map<String, SpecialPermissionHandler> builtIn = new HashMap<>();
+
+    static {
+        registerBuiltIn(new SystemAlertWindowHandler());
+        registerBuiltIn(new WriteSettingsHandler());
+        registerBuiltIn(new ManageExternalStorageHandler());
+    }
+
+    private SpecialPermissionHandlers() {
+    }
+
+    /**
+     * Register a handler. Call it on the main thread before the first request, e.g. in Application.onCreate(), and in the
+     * same order on every launch, so a request saved before the process was killed continues at the right stage.
+     *
+     * @param handler The handler. Replaces the handler registered for the same permission before.
+     */
+    public static synchronized void register(@NonNull SpecialPermissionHandler handler) {
+        String permission = handler.getPermission();
+        Map<String, SpecialPermissionHandler> permissions = new HashMap<>(byPermission);
+        List<SpecialPermissionHandler> requestCodes = new ArrayList<>(byRequestCode);
+        SpecialPermissionHandler replaced = permissions.put(permission, handler);
+        if (replaced != null) {
+            handler.requestCode = replaced.requestCode;
+            requestCodes.set(replaced.requestCode - FIRST_REQUEST_CODE, handler);
+        } else {
+            handler.requestCode = FIRST_REQUEST_CODE + requestCodes.size();
+            requestCodes.add(handler);
+        }
+        PermissionBuilder.STAGE_GRAPH.addStage(permission);
+        String[] prerequisites = handler.getPrerequisites();
+        if (prerequisites.length > 0) {
+            PermissionBuilder.STAGE_GRAPH.require(permission, prerequisites);
+        }
+        byPermission = permissions;
+        byRequestCode = requestCodes;
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Register " + handler.getClass().getName() + " for " + permission + " with request code " + handler.requestCode);
+        }
+    }
+
+    /**
+     * Remove the handler registered for a permission. Requests made afterwards don't run its stage, and the request codes
+     * of the other handlers stay the same. The built-in handler of the permission, if there is one, is registered again.
+     * Call it on the main thread when no request is running.
+     *
+     * @param permission The permission of the handler.
+     * @return True if a handler was removed, false if none or only the built-in one was registered for the permission.
+     */
+    public static synchronized boolean unregister(@NonNull String permission) {
+        SpecialPermissionHandler removed = byPermission.get(permission);
+        if (removed == null) {
+            return false;
+        }
+        SpecialPermissionHandler original = builtIn.get(permission);
+        if (original != null) {
+            if (removed == original) {
+                return false;
+            }
+            register(original);
+            return true;
+        }
+        Map<String, SpecialPermissionHandler> permissions = new HashMap<>(byPermission);
+        List<SpecialPermissionHandler> requestCodes = new ArrayList<>(byRequestCode);
+        permissions.remove(permission);
+        // Keep the place of the request code, so the handlers after it keep theirs, unless it's the last one.
+        requestCodes.set(removed.requestCode - FIRST_REQUEST_CODE, null);
+        while (!requestCodes.isEmpty() && requestCodes.get(requestCodes.size() - 1) == null) {
+            requestCodes.remove(requestCodes.size() - 1);
+        }
+        PermissionBuilder.STAGE_GRAPH.removeStage(permission);
+        byPermission = permissions;
+        byRequestCode = requestCodes;
+        if (PermissionXLog.isLoggable(Log.DEBUG)) {
+            PermissionXLog.d("Unregister " + removed.getClass().getName() + " for " + permission);
+        }
+        return true;
+    }
+
+    private static void registerBuiltIn(SpecialPermissionHandler handler) {
+        builtIn.put(handler.getPermission(), handler);
+        register(handler);
+    }
+
+    /**
+     * @param permission A permission.
+     * @return The handler that requests the permission, or null if it's not a special permission with a handler.
+     */
+    public static SpecialPermissionHandler get(String permission) {
+        return byPermission.get(permission);
+    }
+
+    /**
+     * @return All permissions that have a handler.
+     */
+    @NonNull
+    public static Set<String> getPermissions() {
+        return Collections.unmodifiableSet(byPermission.keySet());
+    }
+
+    /**
+     * @param requestCode Request code of a Settings page.
+     * @return The handler that started the Settings page, or null if it's not started by a handler.
+     */
+    static SpecialPermissionHandler forRequestCode(int requestCode) {
+        List<SpecialPermissionHandler> handlers = byRequestCode;
+        int index = requestCode - FIRST_REQUEST_CODE;
+        return index >= 0 && index < handlers.size() ? handlers.get(index) : null;
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994.request;
+
+import android.Manifest;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.provider.Settings;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Requests android.permission.SYSTEM_ALERT_WINDOW in Settings.ACTION_MANAGE_OVERLAY_PERMISSION.
+ */
+final class SystemAlertWindowHandler extends SpecialPermissionHandler {
+
+    @NonNull
+    @Override
+    public String getPermission() {
+        return Manifest.permission.SYSTEM_ALERT_WINDOW;
+    }
+
+    @Override
+    public boolean isGranted(@NonNull Context context) {
+        // SYSTEM_ALERT_WINDOW permission is automatically granted below Android M.
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || Settings.canDrawOverlays(context);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    @NonNull
+    @Override
+    public Intent createIntent(@NonNull Context context) {
+        return new Intent(Settings.ACTION_MANAGE_OVERLAY_PERMISSION);
+    }
+
+    @Override
+    public boolean isGrantedAutomatically(@NonNull Context context) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || context.getApplicationInfo().targetSdkVersion < Build.VERSION_CODES.M;
+    }
+
+    @Override
+    public String getAppOp() {
+        return SettingsOpWatcher.OP_SYSTEM_ALERT_WINDOW;
+    }
+
+}
@@ -0,0 +1,575 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.permissionx.qizhou1994;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionGroupInfo;
+import android.os.Build;
+import android.os.Looper;
+import android.provider.Settings;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+
+import com.permissionx.qizhou1994.callback.ExplainReasonCallback;
+import com.permissionx.qizhou1994.callback.ForwardToSettingsCallback;
+import com.permissionx.qizhou1994.callback.RequestCallback;
+import com.permissionx.qizhou1994.checker.DefaultPermissionChecker;
+import com.permissionx.qizhou1994.checker.PermissionChecker;
+import com.permissionx.qizhou1994.checker.PermissionStateProvider;
+import com.permissionx.qizhou1994.dialog.RationaleDialog;
+import com.permissionx.qizhou1994.request.ExplainScope;
+import com.permissionx.qizhou1994.request.ForwardScope;
+import com.permissionx.qizhou1994.request.InvisibleFragment;
+import com.permissionx.qizhou1994.request.SpecialPermissionHandler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowActivity;
+import org.robolectric.shadows.ShadowDialog;
+import org.robolectric.shadows.ShadowSettings;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs complete request flows and fails when one of them costs more than it used to.
+ * Each scenario has ceilings on the permissions checked on the main thread, fragment attaches and dialogs shown.
+ * When a change makes a flow cheaper on purpose, lower the ceilings with it so the gain can't silently regress.
+ * <p>
+ * The same flows are also repeated while the bytes allocated on the main thread are measured. After a warm-up, a flow
+ * must not allocate more than it did the first time it was measured, so nothing piles up from one request to the next.
+ * The flows are compared with themselves only, so the check doesn't depend on the object layout of the JVM.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.Q)
+public class RequestFlowCostTest {
+
+    private static final String FRAGMENT_TAG = "InvisibleFragment";
+
+    private static final String REQUEST_INSTALL_PACKAGES = "android.permission.REQUEST_INSTALL_PACKAGES";
+
+    /**
+     * Runs of a flow before its allocations are measured, so classes are loaded and caches are filled.
+     */
+    private static final int WARM_UP_RUNS = 5;
+
+    /**
+     * Runs of a flow between the baseline and the measurement it's compared with.
+     */
+    private static final int REPEATED_RUNS = 20;
+
+    /**
+     * Runs of a flow each measurement takes the median of, since the looper allocates a little differently each time.
+     */
+    private static final int MEASURED_RUNS = 5;
+
+    /**
+     * How much more than the baseline a flow may allocate later, for the noise of the runtime.
+     */
+    private static final double ALLOWED_GROWTH = 1.2;
+
+    /**
+     * Asks the system through the default checker, which the permission shadows of Robolectric answer, and counts the
+     * permissions checked on the main thread, and the calls made on other threads.
+     */
+    private static class CountingPermissionChecker implements PermissionChecker {
+
+        private final DefaultPermissionChecker checker = new DefaultPermissionChecker();
+
+        int permissionChecks;
+
+        int backgroundCalls;
+
+        @Override
+        public boolean isGranted(@NonNull Context context, @NonNull String permission) {
+            count(1);
+            return checker.isGranted(context, permission);
+        }
+
+        @NonNull
+        @Override
+        public boolean[] areGranted(@NonNull Context context, @NonNull String[] permissions) {
+            count(permissions.length);
+            return checker.areGranted(context, permissions);
+        }
+
+        private synchronized void count(int permissions) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                permissionChecks += permissions;
+            } else {
+                backgroundCalls++;
+            }
+        }
+
+        synchronized int getBackgroundCalls() {
+            return backgroundCalls;
+        }
+
+    }
+
+    private static class InstallPackagesHandler extends SpecialPermissionHandler {
+
+        @NonNull
+        @Override
+        public String getPermission() {
+            return REQUEST_INSTALL_PACKAGES;
+        }
+
+        @Override
+        public boolean isGranted(@NonNull Context context) {
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public Intent createIntent(@NonNull Context context) {
+            return new Intent(Settings.ACTION_MANAGE_UNKNOWN_APP_SOURCES);
+        }
+
+    }
+
+    private ActivityController<FragmentActivity> controller;
+
+    private FragmentActivity activity;
+
+    private final CountingPermissionChecker checker = new CountingPermissionChecker();
+
+    private int fragmentAttaches;
+
+    private int resultCount;
+
+    private boolean allGranted;
+
+    private List<String> deniedList;
+
+    private final RequestCallback requestCallback = new RequestCallback() {
+        @Override
+        public void onResult(boolean allGranted, List<String> grantedList, List<String> deniedList) {
+            resultCount++;
+            RequestFlowCostTest.this.allGranted = allGranted;
+            RequestFlowCostTest.this.deniedList = deniedList;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        controller = Robolectric.buildActivity(FragmentActivity.class).setup();
+        activity = controller.get();
+        activity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(new FragmentManager.FragmentLifecycleCallbacks() {
+            @Override
+            public void onFragmentAttached(@NonNull FragmentManager fm, @NonNull Fragment f, @NonNull Context context) {
+                fragmentAttaches++;
+            }
+        }, true);
+        // DefaultDialog resolves the label and icon of every permission group it shows.
+        PermissionGroupInfo camera = new PermissionGroupInfo();
+        camera.name = Manifest.permission_group.CAMERA;
+        camera.labelRes = android.R.string.ok;
+        camera.icon = android.R.drawable.ic_menu_camera;
+        shadowOf(activity.getPackageManager()).addPermissionGroupInfo(camera);
+        PermissionX.setPermissionChecker(checker);
+    }
+
+    @After
+    public void tearDown() {
+        PermissionX.unregisterSpecialPermissionHandler(REQUEST_INSTALL_PACKAGES);
+        PermissionX.setPermissionChecker(null);
+        PermissionX.setInvisibleFragmentIdleTimeout(0);
+    }
+
+    @Test
+    public void allGranted() {
+        requestGranted();
+
+        assertEquals(1, resultCount);
+        assertCost(2, 0, 0);
+    }
+
+    @Test
+    public void deniedThenRationale() {
+        requestDeniedThenCancelRationale();
+
+        assertCost(2, 1, 1);
+    }
+
+    @Test
+    public void permanentlyDeniedThenSettings() {
+        requestPermanentlyDeniedThenAllowInSettings();
+
+        assertCost(2, 1, 1);
+    }
+
+    @Test
+    public void specialPermissions() {
+        requestGrantedSpecialPermission();
+
+        assertEquals(1, resultCount);
+        assertCost(2, 0, 0);
+    }
+
+    @Test
+    public void ungrantedPermissionsOnlyAreRequested() {
+        requestUngrantedOnly();
+
+        // The granted one is checked again with the result, in case user turned it off meanwhile.
+        assertCost(3, 1, 0);
+    }
+
+    @Test
+    public void grantedPermissionsAreRequestedAgainWhenAsked() {
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO)
+                .requestGrantedPermissionsAgain()
+                .request(requestCallback);
+        idle();
+
+        assertEquals(Arrays.asList(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO),
+                Arrays.asList(lastRequestedPermissions()));
+    }
+
+    @Test
+    public void invisibleFragmentIsAddedAgainAfterIdleTimeout() {
+        requestCameraAndDeny();
+        assertNull(activity.getSupportFragmentManager().findFragmentByTag(FRAGMENT_TAG));
+        requestCameraAndDeny();
+
+        assertEquals(2, resultCount);
+        assertCost(4, 2, 0);
+    }
+
+    @Test
+    public void invisibleFragmentIsKeptWithoutIdleTimeout() {
+        PermissionX.setInvisibleFragmentIdleTimeout(-1);
+
+        requestCameraAndDeny();
+        requestCameraAndDeny();
+
+        assertEquals(2, resultCount);
+        assertCost(4, 1, 0);
+    }
+
+    @Test
+    public void registeredSpecialPermissionCostsOnlyTheRequestsThatContainIt() {
+        PermissionX.registerSpecialPermissionHandler(new InstallPackagesHandler());
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA)
+                .request(requestCallback);
+        idle();
+        assertTrue(allGranted);
+        assertCost(1, 0, 0);
+
+        PermissionX.init(activity)
+                .permissions(REQUEST_INSTALL_PACKAGES)
+                .request(requestCallback);
+        idle();
+
+        assertEquals(2, resultCount);
+        assertTrue(allGranted);
+        // Checked by its stage and by the result, both through the installed checker.
+        assertCost(3, 0, 0);
+    }
+
+    @Test
+    public void nextStageWaitsForTheHostToStart() {
+        ShadowSettings.setCanDrawOverlays(false);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA, Manifest.permission.SYSTEM_ALERT_WINDOW)
+                .request(requestCallback);
+        idle();
+        controller.pause().stop();
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA);
+        deliverNormalPermissionsResult(Manifest.permission.CAMERA, PackageManager.PERMISSION_GRANTED);
+        // The Settings page of the next stage isn't opened while the host is stopped.
+        assertNull(shadowOf(activity).getNextStartedActivity());
+        controller.restart().resume();
+        idle();
+
+        Intent intent = shadowOf(activity).getNextStartedActivity();
+        assertNotNull(intent);
+        assertEquals(Settings.ACTION_MANAGE_OVERLAY_PERMISSION, intent.getAction());
+        assertEquals(0, resultCount);
+    }
+
+    @Test
+    public void lastKnownStateAnswersWithoutChecks() {
+        assertFalse(PermissionX.lastKnown(activity, Manifest.permission.CAMERA));
+        assertCost(0, 0, 0);
+    }
+
+    @Test
+    public void sharedStateIsRefreshedOffTheMainThread() throws InterruptedException {
+        Robolectric.setupContentProvider(PermissionStateProvider.class);
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO)
+                .request(requestCallback);
+        idle();
+        int refreshes = awaitBackgroundCalls(1);
+        // Coming back to the host refreshes it too, since user may have changed permissions in Settings meanwhile.
+        controller.pause().resume();
+        idle();
+        awaitBackgroundCalls(refreshes + 1);
+
+        assertTrue(allGranted);
+        assertCost(2, 0, 0);
+    }
+
+    @Test
+    public void allGrantedAllocationsDontGrow() {
+        assertAllocationsDontGrow(new Runnable() {
+            @Override
+            public void run() {
+                requestGranted();
+            }
+        });
+    }
+
+    @Test
+    public void deniedThenRationaleAllocationsDontGrow() {
+        assertAllocationsDontGrow(new Runnable() {
+            @Override
+            public void run() {
+                requestDeniedThenCancelRationale();
+            }
+        });
+    }
+
+    @Test
+    public void permanentlyDeniedThenSettingsAllocationsDontGrow() {
+        assertAllocationsDontGrow(new Runnable() {
+            @Override
+            public void run() {
+                requestPermanentlyDeniedThenAllowInSettings();
+            }
+        });
+    }
+
+    @Test
+    public void specialPermissionsAllocationsDontGrow() {
+        assertAllocationsDontGrow(new Runnable() {
+            @Override
+            public void run() {
+                requestGrantedSpecialPermission();
+            }
+        });
+    }
+
+    @Test
+    public void ungrantedPermissionsOnlyAllocationsDontGrow() {
+        assertAllocationsDontGrow(new Runnable() {
+            @Override
+            public void run() {
+                requestUngrantedOnly();
+            }
+        });
+    }
+
+    private void requestGranted() {
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO)
+                .request(requestCallback);
+        idle();
+        assertTrue(allGranted);
+    }
+
+    private void requestDeniedThenCancelRationale() {
+        shadowOf(activity.getPackageManager()).setShouldShowRequestPermissionRationale(Manifest.permission.CAMERA, true);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA)
+                .onExplainRequestReason(new ExplainReasonCallback() {
+                    @Override
+                    public void onExplainReason(ExplainScope scope, List<String> deniedList) {
+                        scope.showRequestReasonDialog(deniedList, "Camera is needed", "OK", "Cancel");
+                    }
+                })
+                .request(requestCallback);
+        deliverNormalPermissionsResult(Manifest.permission.CAMERA, PackageManager.PERMISSION_DENIED);
+        latestRationaleDialog().getNegativeButton().performClick();
+        idle();
+        assertFalse(allGranted);
+        assertTrue(deniedList.contains(Manifest.permission.CAMERA));
+    }
+
+    private void requestPermanentlyDeniedThenAllowInSettings() {
+        shadowOf(activity).denyPermissions(Manifest.permission.CAMERA);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA)
+                .onForwardToSettings(new ForwardToSettingsCallback() {
+                    @Override
+                    public void onForwardToSettings(ForwardScope scope, List<String> deniedList) {
+                        scope.showForwardToSettingsDialog(deniedList, "Allow camera in Settings", "OK", "Cancel");
+                    }
+                })
+                .request(requestCallback);
+        deliverNormalPermissionsResult(Manifest.permission.CAMERA, PackageManager.PERMISSION_DENIED);
+        latestRationaleDialog().getPositiveButton().performClick();
+        idle();
+        // User turns the permission on in Settings and comes back.
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA);
+        invisibleFragment().onActivityResult(InvisibleFragment.FORWARD_TO_SETTINGS, Activity.RESULT_CANCELED, null);
+        deliverNormalPermissionsResult(Manifest.permission.CAMERA, PackageManager.PERMISSION_GRANTED);
+        assertTrue(allGranted);
+    }
+
+    private void requestGrantedSpecialPermission() {
+        ShadowSettings.setCanDrawOverlays(true);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.SYSTEM_ALERT_WINDOW)
+                .request(requestCallback);
+        idle();
+        assertTrue(allGranted);
+    }
+
+    private void requestUngrantedOnly() {
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA);
+        shadowOf(activity).denyPermissions(Manifest.permission.RECORD_AUDIO);
+
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO)
+                .request(requestCallback);
+        idle();
+        assertArrayEquals(new String[]{Manifest.permission.RECORD_AUDIO}, lastRequestedPermissions());
+        shadowOf(activity).grantPermissions(Manifest.permission.RECORD_AUDIO);
+        deliverNormalPermissionsResult(Manifest.permission.RECORD_AUDIO, PackageManager.PERMISSION_GRANTED);
+        assertTrue(allGranted);
+    }
+
+    private void requestCameraAndDeny() {
+        PermissionX.init(activity)
+                .permissions(Manifest.permission.CAMERA)
+                .request(requestCallback);
+        deliverNormalPermissionsResult(Manifest.permission.CAMERA, PackageManager.PERMISSION_DENIED);
+        assertFalse(allGranted);
+    }
+
+    /**
+     * Wait for the snapshots the shared state takes on its own thread.
+     * @return The calls made off the main thread so far.
+     */
+    private int awaitBackgroundCalls(int atLeast) throws InterruptedException {
+        for (int i = 0; i < 500 && checker.getBackgroundCalls() < atLeast; i++) {
+            Thread.sleep(10);
+        }
+        int calls = checker.getBackgroundCalls();
+        assertTrue("background calls: " + calls + " < " + atLeast, calls >= atLeast);
+        return calls;
+    }
+
+    /**
+     * Run a flow until it's warm, take the bytes it allocates on this thread as the baseline, then repeat it and check
+     * that it doesn't allocate more than the baseline afterwards.
+     */
+    private static void assertAllocationsDontGrow(Runnable flow) {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            flow.run();
+        }
+        long baseline = medianAllocatedBytes(threadBean, flow);
+        for (int i = 0; i < REPEATED_RUNS; i++) {
+            flow.run();
+        }
+        long bytes = medianAllocatedBytes(threadBean, flow);
+        assertTrue("allocated bytes per flow: " + bytes + " > " + baseline + " at first", bytes <= baseline * ALLOWED_GROWTH);
+    }
+
+    private static long medianAllocatedBytes(com.sun.management.ThreadMXBean threadBean, Runnable flow) {
+        long threadId = Thread.currentThread().getId();
+        long[] bytes = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            flow.run();
+            bytes[i] = threadBean.getThreadAllocatedBytes(threadId) - start;
+        }
+        Arrays.sort(bytes);
+        return bytes[MEASURED_RUNS / 2];
+    }
+
+    private void assertCost(int maxPermissionChecks, int maxFragmentAttaches, int maxDialogs) {
+        int dialogs = ShadowDialog.getShownDialogs().size();
+        assertTrue("permission checks: " + checker.permissionChecks + " > " + maxPermissionChecks, checker.permissionChecks <= maxPermissionChecks);
+        assertTrue("fragment attaches: " + fragmentAttaches + " > " + maxFragmentAttaches, fragmentAttaches <= maxFragmentAttaches);
+        assertTrue("dialogs: " + dialogs + " > " + maxDialogs, dialogs <= maxDialogs);
+    }
+
+    private String[] lastRequestedPermissions() {
+        ShadowActivity.PermissionsRequest request = shadowOf(activity).getLastRequestedPermission();
+        assertNotNull(request);
+        return request.requestedPermissions;
+    }
+
+    private void deliverNormalPermissionsResult(String permission, int grantResult) {
+        idle();
+        invisibleFragment().onRequestPermissionsResult(InvisibleFragment.REQUEST_NORMAL_PERMISSIONS,
+                new String[]{permission}, new int[]{grantResult});
+        idle();
+    }
+
+    private InvisibleFragment invisibleFragment() {
+        InvisibleFragment fragment = (InvisibleFragment) activity.getSupportFragmentManager().findFragmentByTag(FRAGMENT_TAG);
+        assertNotNull(fragment);
+        return fragment;
+    }
+
+    private RationaleDialog latestRationaleDialog() {
+        Dialog dialog = ShadowDialog.getLatestDialog();
+        assertNotNull(dialog);
+        return (RationaleDialog) dialog;
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C)  guolin, PermissionX Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.permissionx.qizhou1994;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+
+import androidx.fragment.app.FragmentActivity;
+
+import com.permissionx.qizhou1994.callback.RequestCallback;
+import com.permissionx.qizhou1994.request.InvisibleFragment;
+import com.permissionx.qizhou1994.request.PermissionBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks on the heap that a request lets go of the builder and the callbacks once it's finished, while the host lives on,
+ * takes its invisible fragment out of the host, and lets go of the callbacks when the host is destroyed while it's in flight,
+ * or recreated without running the request again.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.Q)
+public class RequestRetentionTest {
+
+    private static final String FRAGMENT_TAG = "InvisibleFragment";
+
+    private ActivityController<FragmentActivity> controller;
+
+    private FragmentActivity activity;
+
+    private int resultCount;
+
+    @Before
+    public void setUp() {
+        controller = Robolectric.buildActivity(FragmentActivity.class).setup();
+        activity = controller.get();
+    }
+
+    @Test
+    public void grantedRequestLeavesNothingRetained() {
+        shadowOf(activity).grantPermissions(Manifest.permission.CAMERA);
+        PermissionBuilder builder = PermissionX.init(activity).permissions(Manifest.permission.CAMERA);
+        RequestCallback callback = newCallback();
+        WeakReference<PermissionBuilder> builderRef = new WeakReference<>(builder);
+        WeakReference<RequestCallback> callbackRef = new WeakReference<>(callback);
+        builder.request(callback);
+        builder = null;
+        callback = null;
+        idle();
+
+        assertEquals(1, resultCount);
+        assertCollected("builder", builderRef);
+        assertCollected("callback", callbackRef);
+    }
+
+    @Test
+    public void deniedRequestLeavesNothingRetained() {
+        PermissionBuilder builder = PermissionX.init(activity).permissions(Manifest.permission.CAMERA);
+        RequestCallback callback = newCallback();
+        WeakReference<PermissionBuilder> builderRef = new WeakReference<>(builder);
+        WeakReference<RequestCallback> callbackRef = new WeakReference<>(callback);
+        builder.request(callback);
+        builder = null;
+        callback = null;
+        idle();
+        invisibleFragment().onRequestPermissionsResult(InvisibleFragment.REQUEST_NORMAL_PERMISSIONS,
+                new String[]{Manifest.permission.CAMERA}, new int[]{PackageManager.PERMISSION_DENIED});
+        idle();
+
+        assertEquals(1, resultCount);
+        assertNull("InvisibleFragment is still attached", activity.getSupportFragmentManager().findFragmentByTag(FRAGMENT_TAG));
+        assertCollected("builder", builderRef);
+        assertCollected("callback", callbackRef);
+    }
+
+    @Test
+    public void destroyedHostReleasesCallbacks() {
+        PermissionBuilder builder = PermissionX.init(activity).permissions(Manifest.permission.CAMERA);
+        RequestCallback callback = newCallback();
+        WeakReference<RequestCallback> callbackRef = new WeakReference<>(callback);
+        builder.request(callback);
+        callback = null;
+        idle();
+        // User leaves while the system dialog is showing. The builder is still held here, as a worker or an app field might.
+        controller.pause().stop().destroy();
+        activity = null;
+        idle();
+
+        assertEquals(0, resultCount);
+        assertCollected("callback", callbackRef);
+        assertNotNull(builder);
+    }
+
+    @Test
+    public void requestNotRunAgainAfterRecreationIsReleased() {
+        PermissionBuilder builder = PermissionX.init(activity).permissions(Manifest.permission.CAMERA);
+        RequestCallback callback = newCallback();
+        WeakReference<PermissionBuilder> builderRef = new WeakReference<>(builder);
+        WeakReference<RequestCallback> callbackRef = new WeakReference<>(callback);
+        builder.request(callback);
+        builder = null;
+        callback = null;
+        idle();
+        // User rotates while the system dialog is showing. The request was started by a click, so the recreated host
+        // doesn't run it again.
+        controller.recreate();
+        activity = controller.get();
+        idle();
+
+        assertEquals(0, resultCount);
+        assertNull("InvisibleFragment is still attached", activity.getSupportFragmentManager().findFragmentByTag(FRAGMENT_TAG));
+        assertCollected("builder", builderRef);
+        assertCollected("callback", callbackRef);
+    }
+
+    /**
+     * A callback that captures the host, like the anonymous classes apps write.
+     */
+    private RequestCallback newCallback() {
+        final FragmentActivity host = activity;
+        return new RequestCallback() {
+            @Override
+            public void onResult(boolean allGranted, List<String> grantedList, List<String> deniedList) {
+                resultCount++;
+                host.setTitle("Granted " + grantedList);
+            }
+        };
+    }
+
+    private InvisibleFragment invisibleFragment() {
+        InvisibleFragment fragment = (InvisibleFragment) activity.getSupportFragmentManager().findFragmentByTag(FRAGMENT_TAG);
+        assertNotNull(fragment);
+        return fragment;
+    }
+
+    private static void assertCollected(String name, WeakReference<?> reference) {
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        assertNull(name + " is still reachable", reference.get());
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+}